@@ -4,6 +4,7 @@ import com.filetracker.core.*;
 import com.filetracker.models.Snapshot;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 /**
@@ -15,9 +16,13 @@ import java.util.Scanner;
  */
 public class Main {
 
-    private static SnapshotManager snapshotManager = new SnapshotManager();
+    // Where the tracker keeps its data between runs (hash cache, ...).
+    private static final String STORAGE_PATH = System.getProperty("filetracker.home",
+            Paths.get(System.getProperty("user.home"), ".filetracker").toString());
+
+    private static SnapshotManager snapshotManager;
     private static DiffEngine diffEngine = new DiffEngine();
-    private static Restore restoreEngine = new Restore();
+    private static Restore restoreEngine;
     private static Compression compressionEngine = new Compression();
     private static Scanner scanner = new Scanner(System.in);
 
@@ -26,6 +31,14 @@ public class Main {
         System.out.println("    File Tracker - Lightweight VCS");
         System.out.println("==========================================");
 
+        try {
+            snapshotManager = new SnapshotManager(STORAGE_PATH);
+        } catch (IOException e) {
+            System.err.println("Could not open storage at '" + STORAGE_PATH + "' - running without it: " + e.getMessage());
+            snapshotManager = new SnapshotManager();
+        }
+        restoreEngine = new Restore(snapshotManager.getObjectStore());
+
         boolean running = true;
         while (running) {
             printMenu();
@@ -42,6 +55,9 @@ public class Main {
                     case "diff":
                         diffSpecificCommand();
                         break;
+                    case "diff range":
+                        diffRangeCommand();
+                        break;
                     case "list history":
                         listHistoryCommand();
                         break;
@@ -68,6 +84,11 @@ public class Main {
             System.out.println();
         }
         scanner.close();
+        try {
+            snapshotManager.close();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
     }
 
     private static void printMenu() {
@@ -75,6 +96,7 @@ public class Main {
         System.out.println("  snapshot       - Take a snapshot of a directory");
         System.out.println("  diff latest    - Compare two most recent snapshots");
         System.out.println("  diff           - Compare specific snapshots by index");
+        System.out.println("  diff range     - Net changes between two compressed snapshots");
         System.out.println("  list history   - Show snapshot timeline");
         System.out.println("  restore        - Restore directory to a snapshot");
         System.out.println("  compress       - Compress snapshots (delta storage)");
@@ -88,6 +110,7 @@ public class Main {
         System.out.println("snapshot: Prompts for directory path and creates a new snapshot");
         System.out.println("diff latest: Shows changes between two most recent snapshots");
         System.out.println("diff: Prompts for two snapshot indices to compare");
+        System.out.println("diff range: Prompts for a compressed storage directory and two snapshot IDs, and combines the stored deltas between them");
         System.out.println("list history: Displays all snapshots with IDs and timestamps");
         System.out.println("restore: Prompts for snapshot ID and directory to restore to");
         System.out.println("compress: Compresses snapshots using delta encoding");
@@ -111,7 +134,7 @@ public class Main {
         Snapshot older = snapshotManager.getSecondLatestSnapshot();
         Snapshot newer = snapshotManager.getLatestSnapshot();
 
-        var differences = diffEngine.compare(older, newer);
+        var differences = diffEngine.compareWithMoves(older, newer);
         diffEngine.printDiffReport(differences, older.getSnapshotId(), newer.getSnapshotId());
     }
 
@@ -131,10 +154,22 @@ public class Main {
         Snapshot snap1 = snapshotManager.getSnapshot(index1);
         Snapshot snap2 = snapshotManager.getSnapshot(index2);
 
-        var differences = diffEngine.compare(snap1, snap2);
+        var differences = diffEngine.compareWithMoves(snap1, snap2);
         diffEngine.printDiffReport(differences, snap1.getSnapshotId(), snap2.getSnapshotId());
     }
 
+    private static void diffRangeCommand() throws IOException {
+        System.out.print("Enter storage directory for compressed data: ");
+        String storageDir = scanner.nextLine().trim();
+        System.out.print("Enter first snapshot ID: ");
+        int fromId = Integer.parseInt(scanner.nextLine());
+        System.out.print("Enter second snapshot ID: ");
+        int toId = Integer.parseInt(scanner.nextLine());
+
+        var differences = compressionEngine.diffRange(fromId, toId, storageDir);
+        diffEngine.printDiffReport(differences, fromId, toId);
+    }
+
     private static void listHistoryCommand() {
         snapshotManager.printHistory();
     }
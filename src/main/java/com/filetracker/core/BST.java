@@ -1,7 +1,26 @@
 package com.filetracker.core;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
 
-public class BST<V> {
+
+/**
+ * BST
+ * ----
+ * A self-balancing (red-black) Binary Search Tree keyed by file path.
+ * Files.walkFileTree hands us paths in mostly sorted order, which would turn a plain BST
+ * into a linked list. The red-black rules keep the height below 2*log2(n+1) whatever the
+ * insertion order, so insert and search stay O(log n).
+ * All operations are iterative (parent pointers instead of recursion), so even huge
+ * trees can never overflow the stack.
+ *
+ * @param <V> the type of value stored in the tree (FileMetadata).
+ */
+public class BST<V> implements OrderedIndex<V> {
 
 
     private class Node {
@@ -9,12 +28,14 @@ public class BST<V> {
         V value;      // The data associated with the key (FileMetadata)
         Node left;    // Reference to the left child node
         Node right;   // Reference to the right child node
+        Node parent;  // Reference to the parent node (null for the root)
+        boolean red;  // Node color; new nodes start red
 
-        Node(String key, V value) {
+        Node(String key, V value, Node parent) {
             this.key = key;
             this.value = value;
-            this.left = null;
-            this.right = null;
+            this.parent = parent;
+            this.red = true;
         }
     }
 
@@ -28,77 +49,400 @@ public class BST<V> {
     }
 
 
-    public void insert(String key, V value) {
-        root = insertRecursive(root, key, value);
+    /**
+     * Builds a balanced tree from values that are already sorted by key, in O(n).
+     * This is the fast path for a scanner's sorted file list. If two values share a key,
+     * the later one wins (like insert). If the input turns out not to be sorted,
+     * falls back to inserting the values one by one.
+     *
+     * @param sortedValues The values, sorted by key.
+     * @param keyExtractor Returns the key of a value (e.g. FileMetadata::getFilePath).
+     * @return The new tree.
+     */
+    public static <V> BST<V> fromSorted(List<V> sortedValues, Function<? super V, String> keyExtractor) {
+        BST<V> tree = new BST<>();
+        int n = sortedValues.size();
+        String[] keys = new String[n];
+        Object[] values = new Object[n];
+        int count = 0;
+
+        for (V value : sortedValues) {
+            String key = keyExtractor.apply(value);
+            int comparison = count == 0 ? 1 : key.compareTo(keys[count - 1]);
+            if (comparison < 0) {
+                // Not sorted after all -> safe (but slower) path
+                for (V v : sortedValues) {
+                    tree.insert(keyExtractor.apply(v), v);
+                }
+                return tree;
+            }
+            if (comparison == 0) {
+                values[count - 1] = value; // Duplicate key -> update the value
+            } else {
+                keys[count] = key;
+                values[count] = value;
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            // Nodes on the deepest level are red, all others black: a valid red-black tree.
+            int redDepth = 31 - Integer.numberOfLeadingZeros(count);
+            tree.root = tree.buildBalanced(keys, values, 0, count - 1, null, 0, redDepth);
+            tree.root.red = false;
+            tree.size = count;
+        }
+        return tree;
     }
 
 
-    private Node insertRecursive(Node current, String key, V value) {
-        // Base case: if we've found an empty spot, create a new node here.
-        if (current == null) {
-            size++;
-            return new Node(key, value);
+    @SuppressWarnings("unchecked")
+    private Node buildBalanced(String[] keys, Object[] values, int low, int high, Node parent, int depth, int redDepth) {
+        // Recursion depth is log2(n), so this cannot overflow the stack.
+        if (low > high) {
+            return null;
         }
+        int mid = (low + high) >>> 1;
+        Node node = new Node(keys[mid], (V) values[mid], parent);
+        node.red = depth == redDepth;
+        node.left = buildBalanced(keys, values, low, mid - 1, node, depth + 1, redDepth);
+        node.right = buildBalanced(keys, values, mid + 1, high, node, depth + 1, redDepth);
+        return node;
+    }
 
-        // Compare the new key with the current node's key.
-        int comparison = key.compareTo(current.key);
 
-        if (comparison < 0) {
-            // New key is less than current key -> go left.
-            current.left = insertRecursive(current.left, key, value);
-        } else if (comparison > 0) {
-            // New key is greater than current key -> go right.
-            current.right = insertRecursive(current.right, key, value);
+    public void insert(String key, V value) {
+        // Walk down to the insertion point.
+        Node parent = null;
+        Node current = root;
+        int comparison = 0;
+        while (current != null) {
+            parent = current;
+            comparison = key.compareTo(current.key);
+            if (comparison < 0) {
+                current = current.left;  // New key is less than current key -> go left.
+            } else if (comparison > 0) {
+                current = current.right; // New key is greater than current key -> go right.
+            } else {
+                current.value = value;   // Key already exists -> update the value.
+                return;
+            }
+        }
+
+        Node node = new Node(key, value, parent);
+        if (parent == null) {
+            root = node;
+        } else if (comparison < 0) {
+            parent.left = node;
         } else {
-            // Key already exists -> update the value.
-            current.value = value;
+            parent.right = node;
         }
+        size++;
+        fixAfterInsert(node);
+    }
+
 
-        // Return the current node (which may have new children)
-        return current; // <-- THIS WAS THE BUG! We need to return current, not just let it fall through
+    /**
+     * Restores the red-black rules after inserting the red node 'node'
+     * (no red node has a red child; every path has the same number of black nodes).
+     */
+    private void fixAfterInsert(Node node) {
+        while (node != root && node.parent.red) {
+            Node parent = node.parent;
+            Node grandparent = parent.parent; // Exists, because a red parent is never the root
+
+            if (parent == grandparent.left) {
+                Node uncle = grandparent.right;
+                if (isRed(uncle)) {
+                    // Case 1: red uncle -> recolor and continue from the grandparent.
+                    parent.red = false;
+                    uncle.red = false;
+                    grandparent.red = true;
+                    node = grandparent;
+                } else {
+                    if (node == parent.right) {
+                        // Case 2: zig-zag -> rotate into case 3.
+                        node = parent;
+                        rotateLeft(node);
+                        parent = node.parent;
+                    }
+                    // Case 3: straight line -> recolor and rotate the grandparent.
+                    parent.red = false;
+                    grandparent.red = true;
+                    rotateRight(grandparent);
+                }
+            } else {
+                // Mirror image of the cases above.
+                Node uncle = grandparent.left;
+                if (isRed(uncle)) {
+                    parent.red = false;
+                    uncle.red = false;
+                    grandparent.red = true;
+                    node = grandparent;
+                } else {
+                    if (node == parent.left) {
+                        node = parent;
+                        rotateRight(node);
+                        parent = node.parent;
+                    }
+                    parent.red = false;
+                    grandparent.red = true;
+                    rotateLeft(grandparent);
+                }
+            }
+        }
+        root.red = false;
     }
 
 
-    public V search(String key) {
-        return searchRecursive(root, key);
+    private boolean isRed(Node node) {
+        return node != null && node.red;
+    }
+
+
+    private void rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        if (pivot.left != null) {
+            pivot.left.parent = node;
+        }
+        replaceChild(node, pivot);
+        pivot.left = node;
+        node.parent = pivot;
     }
 
 
-    private V searchRecursive(Node current, String key) {
-        if (current == null) {
-            return null; // Key not found.
+    private void rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        if (pivot.right != null) {
+            pivot.right.parent = node;
         }
+        replaceChild(node, pivot);
+        pivot.right = node;
+        node.parent = pivot;
+    }
+
 
-        int comparison = key.compareTo(current.key);
-        if (comparison == 0) {
-            return current.value; // Key found!
+    // Puts 'replacement' where 'node' hangs in the tree.
+    private void replaceChild(Node node, Node replacement) {
+        replacement.parent = node.parent;
+        if (node.parent == null) {
+            root = replacement;
+        } else if (node.parent.left == node) {
+            node.parent.left = replacement;
+        } else {
+            node.parent.right = replacement;
+        }
+    }
+
+
+    @Override
+    public V search(String key) {
+        Node current = root;
+        while (current != null) {
+            int comparison = key.compareTo(current.key);
+            if (comparison == 0) {
+                return current.value; // Key found!
+            }
+            current = comparison < 0 ? current.left : current.right; // Search left or right subtree.
         }
-        return comparison < 0
-                ? searchRecursive(current.left, key)  // Search left subtree.
-                : searchRecursive(current.right, key); // Search right subtree.
+        return null; // Key not found.
     }
 
 
+    @Override
     public void inOrderTraversal(BSTVisitor<V> visitor) {
-        inOrderTraversalRecursive(root, visitor);
+        // Start at the leftmost node and follow in-order successors.
+        for (Node node = first(); node != null; node = successor(node)) {
+            visitor.visit(node.key, node.value);
+        }
+    }
+
+
+    /**
+     * @return A cursor positioned before the smallest key.
+     */
+    @Override
+    public Cursor<V> cursor() {
+        return new NodeCursor(first());
+    }
+
+
+    /**
+     * @param fromKey The key to start at.
+     * @return A cursor positioned before the first key greater than or equal to 'fromKey'.
+     */
+    @Override
+    public Cursor<V> cursor(String fromKey) {
+        return new NodeCursor(ceiling(fromKey));
+    }
+
+
+    /**
+     * Cursor over the tree's nodes. It follows parent pointers, so it needs no stack
+     * and every step costs O(1) amortized. The tree must not be modified while a cursor is in use.
+     */
+    private class NodeCursor implements Cursor<V> {
+        private Node next;         // The node next() will return
+        private Node lastReturned; // The node returned by the previous next()
+
+        NodeCursor(Node start) {
+            this.next = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.value;
+        }
+
+        @Override
+        public String peekKey() {
+            return next != null ? next.key : null;
+        }
+
+        @Override
+        public String key() {
+            return lastReturned != null ? lastReturned.key : null;
+        }
+
+        @Override
+        public void seek(String key) {
+            next = ceiling(key);
+        }
     }
 
 
-    private void inOrderTraversalRecursive(Node node, BSTVisitor<V> visitor) {
+    // Returns the node with the smallest key >= 'key', or null if there is none.
+    private Node ceiling(String key) {
+        Node current = root;
+        Node best = null;
+        while (current != null) {
+            int comparison = key.compareTo(current.key);
+            if (comparison == 0) {
+                return current;
+            }
+            if (comparison < 0) {
+                best = current; // Candidate; a smaller one may still be on the left
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        return best;
+    }
+
+
+    private Node first() {
+        Node node = root;
         if (node != null) {
-            inOrderTraversalRecursive(node.left, visitor);  // Traverse left subtree
-            visitor.visit(node.key, node.value);           // Process current node
-            inOrderTraversalRecursive(node.right, visitor); // Traverse right subtree
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+
+    private Node successor(Node node) {
+        if (node.right != null) {
+            // Leftmost node of the right subtree.
+            Node next = node.right;
+            while (next.left != null) {
+                next = next.left;
+            }
+            return next;
+        }
+        // Otherwise climb until we come up from a left child.
+        Node child = node;
+        Node parent = node.parent;
+        while (parent != null && child == parent.right) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+
+    /**
+     * The tree is balanced, so the nodes of its top levels split it into ranges of
+     * similar size. Collects them in order, down to the level that gives enough ranges,
+     * then keeps parts - 1 evenly spaced ones (a full level may give up to twice as many).
+     */
+    @Override
+    public List<String> splitKeys(int parts) {
+        int levels = 0;
+        while ((1 << levels) < parts && levels < 30) {
+            levels++;
+        }
+        List<String> keys = new ArrayList<>();
+        collectTopKeys(root, levels, keys);
+        if (keys.size() < parts) {
+            return keys;
+        }
+        // keys.size() + 1 >= parts, so the picked indexes are distinct and increasing
+        List<String> picked = new ArrayList<>(parts - 1);
+        for (int i = 1; i < parts; i++) {
+            picked.add(keys.get((int) ((long) i * (keys.size() + 1) / parts) - 1));
+        }
+        return picked;
+    }
+
+    private void collectTopKeys(Node node, int levels, List<String> keys) {
+        if (node == null || levels == 0) {
+            return;
+        }
+        collectTopKeys(node.left, levels - 1, keys);
+        keys.add(node.key);
+        collectTopKeys(node.right, levels - 1, keys);
+    }
+
+
+    /**
+     * @return The number of levels in the tree (0 for an empty tree).
+     */
+    public int height() {
+        if (root == null) {
+            return 0;
+        }
+        // Level-order walk; the queue never holds more than one level.
+        int height = 0;
+        Deque<Node> level = new ArrayDeque<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            height++;
+            for (int i = level.size(); i > 0; i--) {
+                Node node = level.poll();
+                if (node.left != null) {
+                    level.add(node.left);
+                }
+                if (node.right != null) {
+                    level.add(node.right);
+                }
+            }
         }
+        return height;
     }
 
 
+    @Override
     public int size() {
         return size;
     }
 
 
+    @Override
     public boolean isEmpty() {
         return root == null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package com.filetracker.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BlockDelta
+ * -----------
+ * Encodes a new version of a file as a binary delta against its previous version (rsync algorithm).
+ * The base is cut into fixed-size blocks, and each block gets a cheap weak checksum and a strong hash.
+ * A window of the same size then slides over the new content one byte at a time; the weak
+ * checksum is "rolling" (updated in O(1) per byte), and only when it matches a base block is
+ * the strong hash computed. Matching blocks become block references, everything in between
+ * is stored as literal bytes. An edit therefore costs about its own size plus one block.
+ * <p>
+ * Encoded ops: COPY (first block, block count), LITERAL (length, bytes), END.
+ */
+public class BlockDelta {
+
+    private static final int OP_COPY = 0;
+    private static final int OP_LITERAL = 1;
+    private static final int OP_END = 2;
+
+    private BlockDelta() {
+    }
+
+    /**
+     * @param baseSize The size of the base version.
+     * @return A block size that balances signature size against match granularity (about sqrt(size)).
+     */
+    public static int blockSizeFor(long baseSize) {
+        int sqrt = (int) Math.sqrt((double) baseSize);
+        return Math.max(1024, Math.min(64 * 1024, Integer.highestOneBit(Math.max(sqrt, 1)) * 2));
+    }
+
+    /**
+     * Encodes 'target' as ops against 'base'.
+     *
+     * @param base      The previous version.
+     * @param target    The new version.
+     * @param blockSize The block size (see blockSizeFor).
+     * @param maxSize   Give up once the encoded ops exceed this many bytes.
+     * @return The encoded ops, or null if they would be larger than maxSize.
+     */
+    public static byte[] encode(ByteBuffer base, ByteBuffer target, int blockSize, int maxSize) throws IOException {
+        // Signature of the base: weak checksum -> chain of blocks with that checksum
+        int blockCount = base.limit() / blockSize;
+        int[] weak = new int[blockCount];
+        long[] strong = new long[blockCount];
+        int[] nextWithSameWeak = new int[blockCount];
+        Map<Integer, Integer> firstWithWeak = new HashMap<>();
+        MessageDigest digest = FileHasher.newDigest();
+        for (int block = blockCount - 1; block >= 0; block--) { // Backwards, so chains list the lowest block first
+            weak[block] = weakChecksum(base, block * blockSize, blockSize);
+            strong[block] = strongHash(digest, base, block * blockSize, blockSize);
+            Integer first = firstWithWeak.put(weak[block], block);
+            nextWithSameWeak[block] = first != null ? first : -1;
+        }
+
+        OpWriter ops = new OpWriter(target, blockSize);
+        int length = target.limit();
+        int position = 0;
+        int a = 0;
+        int b = 0;
+        if (length >= blockSize) {
+            int checksum = weakChecksum(target, 0, blockSize);
+            a = checksum & 0xFFFF;
+            b = checksum >>> 16;
+        }
+        while (position + blockSize <= length) {
+            int checksum = a | (b << 16);
+            Integer candidate = firstWithWeak.get(checksum);
+            int match = -1;
+            if (candidate != null) {
+                long hash = strongHash(digest, target, position, blockSize);
+                for (int block = candidate; block >= 0; block = nextWithSameWeak[block]) {
+                    if (strong[block] == hash) {
+                        match = block;
+                        break;
+                    }
+                }
+            }
+
+            if (match >= 0) {
+                ops.copy(position, match);
+                position += blockSize;
+                if (position + blockSize <= length) {
+                    int next = weakChecksum(target, position, blockSize);
+                    a = next & 0xFFFF;
+                    b = next >>> 16;
+                }
+            } else {
+                // Roll the window one byte forward
+                if (position + blockSize < length) {
+                    int out = target.get(position) & 0xFF;
+                    int in = target.get(position + blockSize) & 0xFF;
+                    a = (a - out + in) & 0xFFFF;
+                    b = (b - blockSize * out + a) & 0xFFFF;
+                }
+                position++;
+            }
+            if (ops.size(position) > maxSize) {
+                return null;
+            }
+        }
+        ops.finish(length);
+        return ops.size(length) > maxSize ? null : ops.toByteArray();
+    }
+
+    /**
+     * Rebuilds the new version from the base and the encoded ops.
+     *
+     * @param base      The previous version.
+     * @param blockSize The block size used for encoding.
+     * @param ops       The encoded ops.
+     * @param out       Receives the new version.
+     * @throws IOException If the ops are corrupt or the files cannot be read or written.
+     */
+    public static void apply(FileChannel base, int blockSize, ByteBuffer ops, FileChannel out) throws IOException {
+        while (true) {
+            int op = ops.get() & 0xFF;
+            switch (op) {
+                case OP_COPY: {
+                    long start = SnapshotCodec.readVarLong(ops) * blockSize;
+                    long count = SnapshotCodec.readVarLong(ops) * blockSize;
+                    long end = start + count;
+                    while (start < end) {
+                        long transferred = base.transferTo(start, end - start, out);
+                        if (transferred <= 0) {
+                            throw new IOException("Error: Delta refers past the end of its base.");
+                        }
+                        start += transferred;
+                    }
+                    break;
+                }
+                case OP_LITERAL: {
+                    int literalLength = (int) SnapshotCodec.readVarLong(ops);
+                    ByteBuffer literal = ops.slice();
+                    literal.limit(literalLength);
+                    while (literal.hasRemaining()) {
+                        out.write(literal);
+                    }
+                    ops.position(ops.position() + literalLength);
+                    break;
+                }
+                case OP_END:
+                    return;
+                default:
+                    throw new IOException("Error: Unknown delta op " + op + ".");
+            }
+        }
+    }
+
+    // rsync's weak checksum: a = sum of bytes, b = sum of running sums (both mod 2^16).
+    private static int weakChecksum(ByteBuffer data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            a += data.get(offset + i) & 0xFF;
+            b += a;
+        }
+        return (a & 0xFFFF) | ((b & 0xFFFF) << 16);
+    }
+
+    // First 8 bytes of the block's SHA-256.
+    private static long strongHash(MessageDigest digest, ByteBuffer data, int offset, int length) {
+        ByteBuffer block = data.duplicate();
+        block.position(offset).limit(offset + length);
+        digest.update(block);
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Collects ops, merging runs of consecutive blocks into one COPY.
+     */
+    private static class OpWriter {
+        private final ByteBuffer target;
+        private final int blockSize;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final SnapshotCodec.BinaryWriter out = new SnapshotCodec.BinaryWriter(bytes);
+        private int literalStart = 0;  // Target offset where the pending literal starts
+        private int copyStart = -1;    // First base block of the pending COPY, -1 if none
+        private int copyCount = 0;
+
+        OpWriter(ByteBuffer target, int blockSize) {
+            this.target = target;
+            this.blockSize = blockSize;
+        }
+
+        void copy(int targetPosition, int block) throws IOException {
+            flushLiteral(targetPosition);
+            if (copyStart >= 0 && copyStart + copyCount == block) {
+                copyCount++;
+                literalStart = targetPosition + blockSize;
+                return;
+            }
+            flushCopy();
+            copyStart = block;
+            copyCount = 1;
+            literalStart = targetPosition + blockSize;
+        }
+
+        void finish(int targetLength) throws IOException {
+            flushLiteral(targetLength);
+            flushCopy();
+            out.write(OP_END);
+        }
+
+        private void flushLiteral(int end) throws IOException {
+            if (end > literalStart) {
+                flushCopy();
+                out.write(OP_LITERAL);
+                out.writeVarLong(end - literalStart);
+                byte[] literal = new byte[end - literalStart];
+                target.get(literalStart, literal);
+                out.write(literal, 0, literal.length);
+                literalStart = end;
+            }
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyStart >= 0) {
+                out.write(OP_COPY);
+                out.writeVarLong(copyStart);
+                out.writeVarLong(copyCount);
+                copyStart = -1;
+                copyCount = 0;
+            }
+        }
+
+        /**
+         * @param targetPosition The current scan position; literal bytes up to it count too,
+         *                       so a hopeless encoding stops early.
+         */
+        int size(int targetPosition) {
+            return bytes.size() + Math.max(0, targetPosition - literalStart);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.filetracker.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Chunker
+ * --------
+ * Splits content into variable-size chunks at content-defined boundaries (FastCDC).
+ * A rolling "gear" hash is updated with every byte, and a chunk ends where the hash matches
+ * a bit mask. Boundaries therefore depend only on the nearby bytes: after an insert or an
+ * append, the chunks before and after the edit come out exactly the same, and only the
+ * chunks around the edit are new. Fixed-size blocks would all shift instead.
+ * <p>
+ * Like FastCDC, chunks never end before minSize, a stricter mask is used up to the average
+ * size and a looser one after it (so sizes cluster around the average), and maxSize is a hard cut.
+ */
+public class Chunker {
+
+    /** Default average chunk size. */
+    public static final int DEFAULT_AVERAGE_SIZE = 64 * 1024;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed pseudo-random table (SplitMix64), so chunk boundaries are the same in every run.
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Receives the chunks of a stream, in order.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        /**
+         * @param data   Buffer holding the chunk (only valid during the call).
+         * @param offset Start of the chunk in 'data'.
+         * @param length Length of the chunk.
+         */
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    private final long strictMask; // Used before the average size: one more bit than average
+    private final long looseMask;  // Used after the average size: one bit less
+
+    public Chunker() {
+        this(DEFAULT_AVERAGE_SIZE);
+    }
+
+    /**
+     * @param averageSize The average chunk size; a power of two, at least 256.
+     *                    Chunks are between a quarter of and eight times this size.
+     */
+    public Chunker(int averageSize) {
+        if (averageSize < 256 || Integer.bitCount(averageSize) != 1) {
+            throw new IllegalArgumentException("Average chunk size must be a power of two >= 256, got: " + averageSize);
+        }
+        this.averageSize = averageSize;
+        this.minSize = averageSize / 4;
+        this.maxSize = averageSize * 8;
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        // The hash is shifted left per byte, so its top bits depend on the most bytes.
+        this.strictMask = -1L << (64 - (bits + 1));
+        this.looseMask = -1L << (64 - (bits - 1));
+    }
+
+    public int getAverageSize() {
+        return averageSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Reads a channel to the end and hands every chunk to the consumer.
+     *
+     * @param in       The content.
+     * @param consumer Receives each chunk.
+     * @throws IOException If reading fails or the consumer throws.
+     */
+    public void split(ReadableByteChannel in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxSize * 2];
+        ByteBuffer window = ByteBuffer.wrap(buffer);
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+
+        while (true) {
+            if (!eof && end - start < maxSize) {
+                // Refill so that a whole max-size chunk is available
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                window.clear().position(end);
+                while (window.hasRemaining()) {
+                    if (in.read(window) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                end = window.position();
+            }
+            if (start == end) {
+                return;
+            }
+            int length = cut(buffer, start, end - start);
+            consumer.accept(buffer, start, length);
+            start += length;
+        }
+    }
+
+    /**
+     * @return The length of the chunk starting at 'offset' ('available' bytes follow it).
+     */
+    int cut(byte[] data, int offset, int available) {
+        if (available <= minSize) {
+            return available;
+        }
+        int normal = Math.min(averageSize, available);
+        int limit = Math.min(maxSize, available);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
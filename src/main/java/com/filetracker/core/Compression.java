@@ -3,12 +3,19 @@ package com.filetracker.core;
 import com.filetracker.models.FileMetadata;
 import com.filetracker.models.Snapshot;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 
 
@@ -22,16 +29,40 @@ import java.util.List;
  */
 public class Compression {
 
+    /** Name of the file listing the IDs of all snapshots stored in full. */
+    public static final String KEYFRAME_INDEX_FILE = "keyframes.idx";
+
+    private int keyframeInterval = 50;       // Max deltas between two keyframes
+    private double keyframeSizeRatio = 0.5;  // Max delta bytes since a keyframe, relative to its size
+
     /**
      * Represents a delta between two snapshots - what changed.
      */
     public static class Delta {
+        public String rootPath; // Root of the snapshots the delta was made from (may be null)
         public List<FileMetadata> addedFiles = new ArrayList<>();
         public List<String> deletedFilePaths = new ArrayList<>();
         public List<FileMetadata> updatedFiles = new ArrayList<>();
+        public List<Move> movedFiles = new ArrayList<>();
+        // The older version of every deleted, updated and moved-away path, sorted by path.
+        // Lets deltas be composed without the snapshots (see diffRange); empty in old delta files.
+        public List<FileMetadata> previousFiles = new ArrayList<>();
 
         public boolean isEmpty() {
-            return addedFiles.isEmpty() && deletedFilePaths.isEmpty() && updatedFiles.isEmpty();
+            return addedFiles.isEmpty() && deletedFilePaths.isEmpty() && updatedFiles.isEmpty() && movedFiles.isEmpty();
+        }
+    }
+
+    /**
+     * A file that was renamed or moved: gone from 'fromPath', now stored as 'file'.
+     */
+    public static class Move {
+        public final String fromPath;
+        public final FileMetadata file;
+
+        public Move(String fromPath, FileMetadata file) {
+            this.fromPath = fromPath;
+            this.file = file;
         }
     }
 
@@ -45,10 +76,12 @@ public class Compression {
      */
     public Delta createDelta(Snapshot previousSnapshot, Snapshot currentSnapshot) {
         Delta delta = new Delta();
+        delta.rootPath = currentSnapshot.getRootPath();
         DiffEngine diffEngine = new DiffEngine();
 
-        // Use our existing DiffEngine to find changes
-        List<DiffEngine.DiffResult> changes = diffEngine.compare(previousSnapshot, currentSnapshot);
+        // Use our existing DiffEngine to find changes (unchanged directories are skipped).
+        // Renamed files are recorded as moves, not as a deletion plus an addition.
+        List<DiffEngine.DiffResult> changes = diffEngine.compareWithMoves(previousSnapshot, currentSnapshot);
 
         for (DiffEngine.DiffResult change : changes) {
             switch (change.getChangeType()) {
@@ -57,15 +90,25 @@ public class Compression {
                     break;
                 case DELETED:
                     delta.deletedFilePaths.add(change.getFilePath());
+                    delta.previousFiles.add(change.getOldFileMeta());
                     break;
                 case UPDATED:
                     delta.updatedFiles.add(change.getNewFileMeta());
+                    delta.previousFiles.add(change.getOldFileMeta());
+                    break;
+                case MOVED:
+                    delta.movedFiles.add(new Move(change.getOldFilePath(), change.getNewFileMeta()));
+                    delta.previousFiles.add(change.getOldFileMeta());
+                    break;
+                case COPIED:
+                    delta.addedFiles.add(change.getNewFileMeta());
                     break;
                 case UNCHANGED:
                     // Skip unchanged files for delta compression
                     break;
             }
         }
+        delta.previousFiles.sort(Comparator.comparing(FileMetadata::getFilePath));
 
         return delta;
     }
@@ -78,72 +121,223 @@ public class Compression {
      * @return A new Snapshot representing the reconstructed state.
      */
     public Snapshot applyDelta(Snapshot baseSnapshot, Delta delta) {
-        // Create a new snapshot that will be the reconstructed version
-        Snapshot reconstructed = new Snapshot(baseSnapshot.getSnapshotId() + 1); // New ID
-
-        // First, copy all files from the base snapshot (except those that were deleted/updated)
-        BST<FileMetadata> baseTree = baseSnapshot.getFileTree();
-        baseTree.inOrderTraversal((filePath, fileMeta) -> {
-            // Only keep files that weren't deleted or updated in the delta
-            if (!delta.deletedFilePaths.contains(filePath) &&
-                    !containsFilePath(delta.updatedFiles, filePath)) {
-                reconstructed.addFile(fileMeta);
-            }
-        });
+        return applyDeltas(baseSnapshot, List.of(delta));
+    }
 
-        // Then, add all added and updated files from the delta
+    /**
+     * Applies a run of consecutive deltas to a base snapshot in one pass.
+     * The deltas are first folded into one net change per path (a hash map, so later deltas
+     * simply overwrite earlier ones), then merged with the base snapshot's sorted entries.
+     * This is O(base + changes * log changes), and no intermediate Snapshot is built per delta.
+     *
+     * @param baseSnapshot The base snapshot to apply changes to.
+     * @param deltas       The deltas, oldest first.
+     * @return A new Snapshot representing the state after the last delta.
+     */
+    public Snapshot applyDeltas(Snapshot baseSnapshot, List<Delta> deltas) {
+        Map<String, FileMetadata> netChanges = new HashMap<>();
+        for (Delta delta : deltas) {
+            foldDelta(netChanges, delta);
+        }
+        return applyNetChanges(baseSnapshot, netChanges, baseSnapshot.getSnapshotId() + deltas.size());
+    }
+
+    /**
+     * Folds one delta into a map of net changes: path -> new metadata, or null if the path is deleted.
+     */
+    private void foldDelta(Map<String, FileMetadata> netChanges, Delta delta) {
+        for (String deletedPath : delta.deletedFilePaths) {
+            netChanges.put(deletedPath, null);
+        }
+        for (Move move : delta.movedFiles) {
+            netChanges.put(move.fromPath, null);
+        }
+        for (Move move : delta.movedFiles) { // After all removals: moves may swap two paths
+            netChanges.put(move.file.getFilePath(), move.file);
+        }
         for (FileMetadata addedFile : delta.addedFiles) {
-            reconstructed.addFile(addedFile);
+            netChanges.put(addedFile.getFilePath(), addedFile);
         }
         for (FileMetadata updatedFile : delta.updatedFiles) {
-            reconstructed.addFile(updatedFile);
+            netChanges.put(updatedFile.getFilePath(), updatedFile);
         }
+    }
 
+    /**
+     * Merges the base snapshot's sorted entries with the sorted net changes
+     * and bulk-loads the result into a new snapshot.
+     */
+    private Snapshot applyNetChanges(Snapshot baseSnapshot, Map<String, FileMetadata> netChanges, int snapshotId) {
+        List<String> changedPaths = new ArrayList<>(netChanges.keySet());
+        Collections.sort(changedPaths);
+
+        List<FileMetadata> merged = new ArrayList<>(baseSnapshot.getFileTree().size() + changedPaths.size());
+        Cursor<FileMetadata> baseCursor = baseSnapshot.getFileTree().cursor();
+        int i = 0;
+        while (baseCursor.hasNext() || i < changedPaths.size()) {
+            String baseKey = baseCursor.peekKey();
+            String changedPath = i < changedPaths.size() ? changedPaths.get(i) : null;
+            int comp = baseKey == null ? 1 : changedPath == null ? -1 : baseKey.compareTo(changedPath);
+
+            if (comp < 0) {
+                merged.add(baseCursor.next()); // Untouched by the deltas
+                continue;
+            }
+            if (comp == 0) {
+                baseCursor.next(); // Replaced or deleted by the deltas
+            }
+            FileMetadata changed = netChanges.get(changedPath);
+            if (changed != null) {
+                merged.add(changed);
+            }
+            i++;
+        }
+
+        // Create a new snapshot that will be the reconstructed version
+        Snapshot reconstructed = new Snapshot(snapshotId, baseSnapshot.getRootPath());
+        reconstructed.addFiles(merged); // Already sorted -> O(n) bulk load
         return reconstructed;
     }
 
     /**
-     * Helper method to check if a list of FileMetadata contains a specific file path.
+     * Computes the net changes from one stored snapshot to a later one by composing the
+     * deltas between them, without rebuilding either snapshot or anything in between.
+     * Each path remembers its state before its first change in the range (taken from the
+     * delta's previousFiles) and its state after the last one. A file added and then deleted,
+     * or changed and then changed back, cancels out. The cost is proportional to the size
+     * of the deltas (plus sorting the touched paths), not to the size of the snapshots.
+     * <p>
+     * Deltas written before previous versions were recorded do not know what a path held
+     * before; for those paths the older snapshot is rebuilt once and looked up.
+     *
+     * @param fromId      The ID of the older stored snapshot.
+     * @param toId        The ID of the newer stored snapshot (at least fromId).
+     * @param storagePath The directory where compressed data is stored.
+     * @return The net changes in path order, with moves detected (as DiffEngine.compareWithMoves).
+     * @throws IOException If a delta in the range is missing or cannot be read, or the deltas do
+     *                     not match the stored snapshots.
      */
-    private boolean containsFilePath(List<FileMetadata> files, String filePath) {
-        for (FileMetadata file : files) {
-            if (file.getFilePath().equals(filePath)) {
-                return true;
+    public List<DiffEngine.DiffResult> diffRange(int fromId, int toId, String storagePath) throws IOException {
+        if (fromId > toId) {
+            throw new IllegalArgumentException("Range must go from an older to a newer snapshot, got: "
+                    + fromId + " to " + toId);
+        }
+        Path storageDir = Paths.get(storagePath);
+
+        Map<String, NetChange> changes = new HashMap<>();
+        for (int i = fromId + 1; i <= toId; i++) {
+            Path deltaFile = deltaFile(storageDir, i);
+            if (!Files.exists(deltaFile)) {
+                throw new IOException("Error: No delta for snapshot #" + i + " in '" + storagePath + "'.");
+            }
+            composeDelta(changes, deserializeDelta(deltaFile.toString()));
+        }
+
+        List<String> paths = new ArrayList<>(changes.keySet());
+        Collections.sort(paths);
+        Snapshot fromSnapshot = null; // Only rebuilt for deltas without previous versions
+        List<DiffEngine.DiffResult> results = new ArrayList<>();
+        for (String path : paths) {
+            NetChange change = changes.get(path);
+            FileMetadata before = change.before;
+            if (change.existed && before == null) {
+                if (fromSnapshot == null) {
+                    fromSnapshot = decompressSnapshot(fromId, storagePath);
+                }
+                before = fromSnapshot.getFileTree().search(path);
+                if (before == null) {
+                    throw new IOException("Error: The deltas in '" + storagePath + "' change '" + path
+                            + "', which is not in snapshot #" + fromId + ".");
+                }
+            }
+            if (!change.existed) {
+                if (change.after != null) {
+                    results.add(DiffEngine.DiffResult.added(change.after));
+                }
+            } else if (change.after == null) {
+                results.add(DiffEngine.DiffResult.deleted(before));
+            } else if (!before.hasSameContent(change.after)) {
+                results.add(DiffEngine.DiffResult.updated(before, change.after));
             }
         }
-        return false;
+        return new DiffEngine().detectMoves(results);
+    }
+
+    /**
+     * The state of one path across a range of deltas.
+     */
+    private static class NetChange {
+        boolean existed;      // Whether the path existed before the range
+        FileMetadata before;  // Its version before the range (null if unknown or absent)
+        FileMetadata after;   // Its version after the deltas so far (null if absent)
     }
 
     /**
-     * Serializes a Delta object to a file for storage.
+     * Adds one delta to a range: the first change of a path records its prior state,
+     * every change overwrites its current state. Same order of operations as foldDelta.
+     */
+    private void composeDelta(Map<String, NetChange> changes, Delta delta) {
+        Map<String, FileMetadata> previous = new HashMap<>();
+        for (FileMetadata file : delta.previousFiles) {
+            previous.put(file.getFilePath(), file);
+        }
+        for (String deletedPath : delta.deletedFilePaths) {
+            touch(changes, deletedPath, true, previous).after = null;
+        }
+        for (Move move : delta.movedFiles) {
+            touch(changes, move.fromPath, true, previous).after = null;
+        }
+        for (Move move : delta.movedFiles) {
+            touch(changes, move.file.getFilePath(), false, previous).after = move.file;
+        }
+        for (FileMetadata addedFile : delta.addedFiles) {
+            touch(changes, addedFile.getFilePath(), false, previous).after = addedFile;
+        }
+        for (FileMetadata updatedFile : delta.updatedFiles) {
+            touch(changes, updatedFile.getFilePath(), true, previous).after = updatedFile;
+        }
+    }
+
+    private static NetChange touch(Map<String, NetChange> changes, String path, boolean existed,
+                                   Map<String, FileMetadata> previous) {
+        NetChange change = changes.get(path);
+        if (change == null) {
+            change = new NetChange();
+            change.existed = existed;
+            change.before = existed ? previous.get(path) : null;
+            changes.put(path, change);
+        }
+        return change;
+    }
+
+    /**
+     * Writes a Delta object to a file for storage, in the binary delta format (see SnapshotCodec).
      *
      * @param delta     The delta to serialize.
      * @param deltaPath The file path where to store the delta.
-     * @throws IOException If serialization fails.
+     * @throws IOException If writing fails.
      */
     public void serializeDelta(Delta delta, String deltaPath) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(deltaPath))) {
-            oos.writeObject(delta);
-        }
+        SnapshotCodec.writeDelta(delta, Paths.get(deltaPath));
     }
 
     /**
-     * Deserializes a Delta object from a file.
+     * Reads a Delta object from a file written by serializeDelta.
      *
      * @param deltaPath The file path where the delta is stored.
-     * @return The deserialized Delta object.
-     * @throws IOException            If file reading fails.
-     * @throws ClassNotFoundException If deserialization fails.
+     * @return The Delta object.
+     * @throws IOException If reading fails or the file is not a valid delta file.
      */
-    public Delta deserializeDelta(String deltaPath) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(deltaPath))) {
-            return (Delta) ois.readObject();
-        }
+    public Delta deserializeDelta(String deltaPath) throws IOException {
+        return SnapshotCodec.readDelta(Paths.get(deltaPath));
     }
 
     /**
      * Compresses a snapshot by storing only the delta from the previous snapshot.
-     * If it's the first snapshot, stores it completely.
+     * The first snapshot is stored completely. Later snapshots are additionally stored
+     * completely as a "keyframe" when too much has changed since the last keyframe
+     * (see shouldWriteKeyframe), so decompression never has to replay a long chain.
+     * The IDs of all keyframes are listed in the keyframe index file.
      *
      * @param snapshotManager The snapshot manager containing the timeline.
      * @param snapshot        The snapshot to compress.
@@ -155,58 +349,169 @@ public class Compression {
         Files.createDirectories(storageDir);
 
         int snapshotId = snapshot.getSnapshotId();
-        String snapshotFilePath = storageDir.resolve("snapshot_" + snapshotId + ".dat").toString();
+        TreeSet<Integer> keyframes = readKeyframeIndex(storageDir);
 
         if (snapshotId == 1) {
             // First snapshot - store completely
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(snapshotFilePath))) {
-                oos.writeObject(snapshot);
-            }
+            writeFullSnapshot(snapshot, snapshotFile(storageDir, snapshotId));
+            keyframes.add(snapshotId);
         } else {
             // Subsequent snapshots - store delta
-            Snapshot previousSnapshot = snapshotManager.getSnapshot(snapshotId - 2); // 0-based index
+            Snapshot previousSnapshot = snapshotManager.getSnapshotById(snapshotId - 1); // O(1) ID lookup
             Delta delta = createDelta(previousSnapshot, snapshot);
 
-            String deltaFilePath = storageDir.resolve("delta_" + snapshotId + ".dat").toString();
+            String deltaFilePath = deltaFile(storageDir, snapshotId).toString();
             serializeDelta(delta, deltaFilePath);
 
             // For demonstration, also store info about compression ratio
             System.out.println("Snapshot #" + snapshotId + " compressed. Delta contains: " +
                     delta.addedFiles.size() + " added, " +
                     delta.deletedFilePaths.size() + " deleted, " +
-                    delta.updatedFiles.size() + " updated files.");
+                    delta.updatedFiles.size() + " updated, " +
+                    delta.movedFiles.size() + " moved files.");
+
+            // Every delta is kept (range diffs need them); keyframes are stored on top.
+            Integer lastKeyframe = keyframes.lower(snapshotId);
+            if (lastKeyframe == null || shouldWriteKeyframe(storageDir, lastKeyframe, snapshotId)) {
+                writeFullSnapshot(snapshot, snapshotFile(storageDir, snapshotId));
+                keyframes.add(snapshotId);
+                System.out.println("Snapshot #" + snapshotId + " also stored as a keyframe.");
+            } else if (keyframes.remove(snapshotId)) {
+                Files.deleteIfExists(snapshotFile(storageDir, snapshotId)); // Stale keyframe from an earlier run
+            }
+        }
+
+        writeKeyframeIndex(storageDir, keyframes);
+    }
+
+    /**
+     * Sets how many deltas may follow a keyframe before the next snapshot is stored in full.
+     *
+     * @param keyframeInterval The maximum chain length (at least 1).
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1, got: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Sets how large the deltas since the last keyframe may grow, as a fraction of the
+     * keyframe's own size, before the next snapshot is stored in full.
+     *
+     * @param keyframeSizeRatio The ratio (e.g. 0.5 = half the size of the keyframe).
+     */
+    public void setKeyframeSizeRatio(double keyframeSizeRatio) {
+        if (keyframeSizeRatio <= 0) {
+            throw new IllegalArgumentException("Keyframe size ratio must be positive, got: " + keyframeSizeRatio);
+        }
+        this.keyframeSizeRatio = keyframeSizeRatio;
+    }
+
+    /**
+     * Decides whether a snapshot should be stored as a keyframe: either the chain since the last
+     * keyframe has reached the keyframe interval, or the deltas in that chain together take more
+     * than keyframeSizeRatio times the size of the keyframe (replaying them costs about as much
+     * as reading a full snapshot).
+     */
+    private boolean shouldWriteKeyframe(Path storageDir, int lastKeyframe, int snapshotId) throws IOException {
+        if (snapshotId - lastKeyframe >= keyframeInterval) {
+            return true;
+        }
+        Path keyframeFile = snapshotFile(storageDir, lastKeyframe);
+        if (!Files.exists(keyframeFile)) {
+            return true; // The chain has no usable base
+        }
+        long deltaBytes = 0;
+        for (int id = lastKeyframe + 1; id <= snapshotId; id++) {
+            Path deltaFile = deltaFile(storageDir, id);
+            if (Files.exists(deltaFile)) {
+                deltaBytes += Files.size(deltaFile);
+            }
+        }
+        return deltaBytes >= Files.size(keyframeFile) * keyframeSizeRatio;
+    }
+
+    /**
+     * Reads the keyframe index (one snapshot ID per line).
+     * Storage written before keyframes existed only has snapshot 1 stored in full.
+     */
+    private TreeSet<Integer> readKeyframeIndex(Path storageDir) throws IOException {
+        TreeSet<Integer> keyframes = new TreeSet<>();
+        Path indexFile = storageDir.resolve(KEYFRAME_INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            if (Files.exists(snapshotFile(storageDir, 1))) {
+                keyframes.add(1);
+            }
+            return keyframes;
+        }
+        for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                keyframes.add(Integer.parseInt(line.trim()));
+            }
         }
+        return keyframes;
+    }
+
+    private void writeKeyframeIndex(Path storageDir, TreeSet<Integer> keyframes) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int keyframe : keyframes) {
+            content.append(keyframe).append('\n');
+        }
+        // Write to a temp file first so a crash never leaves a half-written index
+        Path indexFile = storageDir.resolve(KEYFRAME_INDEX_FILE);
+        Path tempFile = storageDir.resolve(KEYFRAME_INDEX_FILE + ".tmp");
+        Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path snapshotFile(Path storageDir, int snapshotId) {
+        return storageDir.resolve("snapshot_" + snapshotId + ".dat");
+    }
+
+    private static Path deltaFile(Path storageDir, int snapshotId) {
+        return storageDir.resolve("delta_" + snapshotId + ".dat");
+    }
+
+    private void writeFullSnapshot(Snapshot snapshot, Path snapshotFile) throws IOException {
+        SnapshotCodec.writeSnapshot(snapshot, snapshotFile);
+    }
+
+    // Keyframes are mapped, not loaded: only the entries actually used get decoded.
+    private Snapshot readFullSnapshot(Path snapshotFile) throws IOException {
+        return MappedSnapshot.open(snapshotFile);
     }
 
     /**
-     * Decompresses a snapshot by applying all deltas from the beginning.
+     * Decompresses a snapshot, starting from the nearest keyframe at or below it
+     * and applying only the deltas after that keyframe.
      *
      * @param snapshotId  The ID of the snapshot to decompress.
      * @param storagePath The directory where compressed data is stored.
      * @return The fully reconstructed Snapshot.
-     * @throws IOException            If decompression fails.
-     * @throws ClassNotFoundException If deserialization fails.
+     * @throws IOException If decompression fails.
      */
-    public Snapshot decompressSnapshot(int snapshotId, String storagePath) throws IOException, ClassNotFoundException {
+    public Snapshot decompressSnapshot(int snapshotId, String storagePath) throws IOException {
         Path storageDir = Paths.get(storagePath);
 
-        if (snapshotId == 1) {
-            // First snapshot - load directly
-            String snapshotFilePath = storageDir.resolve("snapshot_1.dat").toString();
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(snapshotFilePath))) {
-                return (Snapshot) ois.readObject();
-            }
+        Integer keyframe = readKeyframeIndex(storageDir).floor(snapshotId);
+        if (keyframe == null) {
+            throw new IOException("Error: No keyframe at or below snapshot #" + snapshotId + " in '" + storagePath + "'.");
         }
 
-        // For subsequent snapshots, we need to build from base + all deltas
-        Snapshot current = decompressSnapshot(1, storagePath); // Start with base
+        Snapshot base = readFullSnapshot(snapshotFile(storageDir, keyframe)); // Start with the keyframe
+        if (keyframe == snapshotId) {
+            return base;
+        }
 
-        for (int i = 2; i <= snapshotId; i++) {
-            String deltaFilePath = storageDir.resolve("delta_" + i + ".dat").toString();
-            Delta delta = deserializeDelta(deltaFilePath);
-            current = applyDelta(current, delta);
+        // Apply the deltas after the keyframe. They are folded into one set of
+        // net changes and applied in a single pass.
+        Map<String, FileMetadata> netChanges = new HashMap<>();
+        for (int i = keyframe + 1; i <= snapshotId; i++) {
+            foldDelta(netChanges, deserializeDelta(deltaFile(storageDir, i).toString()));
         }
 
-        return current;
+        return applyNetChanges(base, netChanges, snapshotId);
     }
-}
\ No newline at end of file
+}
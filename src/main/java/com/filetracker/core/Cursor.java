@@ -0,0 +1,34 @@
+package com.filetracker.core;
+
+import java.util.Iterator;
+
+/**
+ * Cursor
+ * -------
+ * A forward-only position in a sorted tree of files.
+ * Unlike BSTVisitor, a cursor is pulled by the caller: it can stop at any time,
+ * jump ahead with seek(), and walk two trees side by side without copying either of them.
+ * next() returns the stored value itself, so iterating allocates nothing per entry.
+ *
+ * @param <V> the type of value stored in the tree (FileMetadata).
+ */
+public interface Cursor<V> extends Iterator<V> {
+
+    /**
+     * @return The key of the next entry without moving the cursor, or null at the end.
+     */
+    String peekKey();
+
+    /**
+     * @return The key of the entry last returned by next(), or null before the first call.
+     */
+    String key();
+
+    /**
+     * Moves the cursor so that the next call to next() returns the first entry
+     * whose key is greater than or equal to 'key'. Seeking backwards is allowed.
+     *
+     * @param key The key to position at.
+     */
+    void seek(String key);
+}
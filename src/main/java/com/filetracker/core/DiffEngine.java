@@ -3,8 +3,27 @@ package com.filetracker.core;
 import com.filetracker.models.FileMetadata;
 import com.filetracker.models.Snapshot;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * DiffEngine
@@ -15,12 +34,17 @@ import java.util.List;
  */
 public class DiffEngine {
 
+    /** Below this many files (both snapshots together), compareParallel() does not split the work. */
+    static final int PARALLEL_THRESHOLD = Integer.getInteger("filetracker.diff.parallelThreshold", 20_000);
+
     /**
      * Represents a single change between two snapshot.
      */
     public static class DiffResult {
         public enum ChangeType {
-            ADDED, DELETED, UPDATED, UNCHANGED
+            ADDED, DELETED, UPDATED, UNCHANGED,
+            MOVED,  // Deleted at the old path and added with the same content at the new one
+            COPIED  // Added with the same content as a file that was moved away from its path
         }
 
         private final String filePath;
@@ -53,11 +77,21 @@ public class DiffEngine {
             return new DiffResult(file.getFilePath(), ChangeType.UNCHANGED, file, file);
         }
 
+        public static DiffResult moved(FileMetadata oldFile, FileMetadata newFile) {
+            return new DiffResult(newFile.getFilePath(), ChangeType.MOVED, oldFile, newFile);
+        }
+
+        public static DiffResult copied(FileMetadata sourceFile, FileMetadata newFile) {
+            return new DiffResult(newFile.getFilePath(), ChangeType.COPIED, sourceFile, newFile);
+        }
+
         // Getters
         public String getFilePath() { return filePath; }
         public ChangeType getChangeType() { return changeType; }
         public FileMetadata getOldFileMeta() { return oldFileMeta; }
         public FileMetadata getNewFileMeta() { return newFileMeta; }
+        // For MOVED and COPIED: the path the content came from
+        public String getOldFilePath() { return oldFileMeta != null ? oldFileMeta.getFilePath() : null; }
 
         @Override
         public String toString() {
@@ -70,6 +104,10 @@ public class DiffEngine {
                     return "UPDATED: " + filePath + " (Size: " + oldFileMeta.getFileSize() + " -> " + newFileMeta.getFileSize() + " bytes, Hash changed)";
                 case UNCHANGED:
                     return "UNCHANGED: " + filePath;
+                case MOVED:
+                    return "MOVED:   " + oldFileMeta.getFilePath() + " -> " + filePath;
+                case COPIED:
+                    return "COPIED:  " + oldFileMeta.getFilePath() + " -> " + filePath;
                 default:
                     return filePath + ": " + changeType;
             }
@@ -85,58 +123,442 @@ public class DiffEngine {
      * @return A List of DiffResult objects detailing all changes.
      */
     public List<DiffResult> compare(Snapshot snapshotA, Snapshot snapshotB) {
-        List<DiffResult> differences = new ArrayList<>();
-
-        // Use the BST's public inOrderTraversal method to get sorted lists
-        List<FileMetadata> listA = new ArrayList<>();
-        List<FileMetadata> listB = new ArrayList<>();
-
-        if (snapshotA != null && !snapshotA.getFileTree().isEmpty()) {
-            snapshotA.getFileTree().inOrderTraversal((key, value) -> listA.add(value));
-        }
-        if (snapshotB != null && !snapshotB.getFileTree().isEmpty()) {
-            snapshotB.getFileTree().inOrderTraversal((key, value) -> listB.add(value));
-        }
-
-        // Perform a merge-like operation on the two sorted lists
-        int i = 0, j = 0;
-        while (i < listA.size() && j < listB.size()) {
-            FileMetadata fileA = listA.get(i);
-            FileMetadata fileB = listB.get(j);
-
-            int comp = fileA.getFilePath().compareTo(fileB.getFilePath());
-            if (comp < 0) {
-                // File exists only in snapshot A -> it was deleted
-                differences.add(DiffResult.deleted(fileA));
-                i++;
-            } else if (comp > 0) {
-                // File exists only in snapshot B -> it was added.
-                differences.add(DiffResult.added(fileB));
-                j++;
-            } else {
-                // File exists in both -> check if it was updated
-                if (!fileA.getFileHash().equals(fileB.getFileHash())) {
-                    differences.add(DiffResult.updated(fileA, fileB));
+        return compare(snapshotA, snapshotB, "");
+    }
+
+    /**
+     * Same as compare(), restricted to the files under one directory (e.g. "src").
+     * Both trees are walked with cursors that seek straight to the directory,
+     * so neither snapshot is copied and files outside the directory are never visited.
+     *
+     * @param snapshotA The older snapshot (can be null to simulate an empty snapshot).
+     * @param snapshotB The newer snapshot.
+     * @param directory The relative directory to compare; null or "" compares everything.
+     * @return A List of DiffResult objects for the files under the directory.
+     */
+    public List<DiffResult> compare(Snapshot snapshotA, Snapshot snapshotB, String directory) {
+        return collect(iterate(snapshotA, snapshotB, new DiffOptions().directory(directory).includeUnchanged()));
+    }
+
+    /**
+     * Returns only the changes between two snapshots (no UNCHANGED entries).
+     * Uses the snapshots' Merkle directory hashes: a directory whose hash is the same in both
+     * snapshots holds the same files, so both cursors jump past it without visiting its entries.
+     * When only a few files changed, the cost is O(changed paths x depth x log n)
+     * instead of O(total files).
+     *
+     * @param snapshotA The older snapshot (can be null to simulate an empty snapshot).
+     * @param snapshotB The newer snapshot.
+     * @return The ADDED, DELETED and UPDATED entries, in path order.
+     */
+    public List<DiffResult> compareChanges(Snapshot snapshotA, Snapshot snapshotB) {
+        return collect(iterate(snapshotA, snapshotB, new DiffOptions()));
+    }
+
+    /**
+     * @return true if the two snapshots differ at all. Once the Merkle hashes are known
+     * (they are computed when a snapshot is taken and stored in its file), this is one hash comparison.
+     */
+    public boolean hasChanges(Snapshot snapshotA, Snapshot snapshotB) {
+        return iterate(snapshotA, snapshotB, new DiffOptions().limit(1)).hasNext();
+    }
+
+    /**
+     * @return true if anything under the directory differs between the two snapshots.
+     */
+    public boolean hasChanges(Snapshot snapshotA, Snapshot snapshotB, String directory) {
+        return iterate(snapshotA, snapshotB, new DiffOptions().directory(directory).limit(1)).hasNext();
+    }
+
+    /**
+     * Lazily produces the differences between two snapshots, in path order.
+     * Nothing is computed ahead: each call to next() advances the merge just far enough to
+     * find the next matching entry, so a caller that stops early (or a small limit)
+     * only pays for what it reads, and no list of results is ever built.
+     *
+     * @param snapshotA The older snapshot (can be null to simulate an empty snapshot).
+     * @param snapshotB The newer snapshot.
+     * @param options   Directory, change types and limit.
+     * @return An iterator over the matching differences.
+     */
+    public Iterator<DiffResult> iterate(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options) {
+        return new DiffIterator(snapshotA, snapshotB, options, null, null);
+    }
+
+    /**
+     * Same as iterate(), as a sequential Stream (e.g. for filter/map/findFirst).
+     */
+    public Stream<DiffResult> stream(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterate(snapshotA, snapshotB, options),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Same as compareChanges(), run on several threads. See compareParallel(Snapshot, Snapshot, DiffOptions).
+     */
+    public List<DiffResult> compareParallel(Snapshot snapshotA, Snapshot snapshotB) {
+        return compareParallel(snapshotA, snapshotB, new DiffOptions());
+    }
+
+    /**
+     * Same as collecting iterate(), but the key space is cut into ranges that are merged in
+     * parallel on the common fork-join pool. Split keys come from both snapshots' indexes
+     * (see OrderedIndex.splitKeys), so the ranges hold similar numbers of files without a
+     * pass over the data. Each range is an ordinary merge between two cursors that seek to
+     * its first key, and the ranges' results are concatenated in key order, so the output
+     * is exactly the sequential one. Small snapshots are merged on the calling thread.
+     *
+     * @param snapshotA The older snapshot (can be null to simulate an empty snapshot).
+     * @param snapshotB The newer snapshot.
+     * @param options   Directory, change types and limit.
+     * @return The matching differences, in path order.
+     */
+    public List<DiffResult> compareParallel(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options) {
+        return compareParallel(snapshotA, snapshotB, options, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as compareParallel(Snapshot, Snapshot, DiffOptions), on the given pool. The number of
+     * ranges follows the pool's parallelism; a pool with a single thread merges sequentially.
+     */
+    public List<DiffResult> compareParallel(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options, ForkJoinPool pool) {
+        long files = (snapshotA != null ? snapshotA.getFileCount() : 0L) + (snapshotB != null ? snapshotB.getFileCount() : 0L);
+        int parallelism = pool.getParallelism();
+        if (files < PARALLEL_THRESHOLD || parallelism < 2) {
+            return collect(iterate(snapshotA, snapshotB, options));
+        }
+        if (!options.types.contains(DiffResult.ChangeType.UNCHANGED)) {
+            // Computed once here, so the workers only read them
+            if (snapshotA != null) {
+                snapshotA.getDirectoryHashes();
+            }
+            if (snapshotB != null) {
+                snapshotB.getDirectoryHashes();
+            }
+        }
+
+        // Range i is [bounds[i], bounds[i + 1]); null means open-ended
+        TreeSet<String> splits = new TreeSet<>();
+        for (Snapshot snapshot : new Snapshot[]{snapshotA, snapshotB}) {
+            if (snapshot != null) {
+                for (String key : snapshot.getFileTree().splitKeys(parallelism * 4)) {
+                    if (key.startsWith(options.prefix)) {
+                        splits.add(key);
+                    }
+                }
+            }
+        }
+        List<String> bounds = new ArrayList<>();
+        bounds.add(null);
+        bounds.addAll(splits);
+        bounds.add(null);
+
+        List<DiffResult> results = pool.invoke(new RangeDiffTask(snapshotA, snapshotB, options, bounds, 0, bounds.size() - 1));
+        return results.size() > options.limit ? new ArrayList<>(results.subList(0, (int) options.limit)) : results;
+    }
+
+    /**
+     * Diffs the ranges [low, high) of a bound list, halving until a single range is left.
+     */
+    private static class RangeDiffTask extends RecursiveTask<List<DiffResult>> {
+        private static final long serialVersionUID = 1L;
+        private final Snapshot snapshotA;
+        private final Snapshot snapshotB;
+        private final DiffOptions options;
+        private final List<String> bounds;
+        private final int low;
+        private final int high;
+
+        RangeDiffTask(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options, List<String> bounds, int low, int high) {
+            this.snapshotA = snapshotA;
+            this.snapshotB = snapshotB;
+            this.options = options;
+            this.bounds = bounds;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        protected List<DiffResult> compute() {
+            if (high - low == 1) {
+                return collect(new DiffIterator(snapshotA, snapshotB, options, bounds.get(low), bounds.get(high)));
+            }
+            int mid = (low + high) >>> 1;
+            RangeDiffTask left = new RangeDiffTask(snapshotA, snapshotB, options, bounds, low, mid);
+            left.fork();
+            List<DiffResult> right = new RangeDiffTask(snapshotA, snapshotB, options, bounds, mid, high).compute();
+            List<DiffResult> results = left.join();
+            results.addAll(right);
+            return results;
+        }
+    }
+
+    private static List<DiffResult> collect(Iterator<DiffResult> results) {
+        List<DiffResult> list = new ArrayList<>();
+        results.forEachRemaining(list::add);
+        return list;
+    }
+
+    /**
+     * Options for iterate() and stream(). By default: the whole snapshot,
+     * ADDED, DELETED and UPDATED entries, no limit.
+     */
+    public static class DiffOptions {
+        private String prefix = "";
+        private EnumSet<DiffResult.ChangeType> types =
+                EnumSet.of(DiffResult.ChangeType.ADDED, DiffResult.ChangeType.DELETED, DiffResult.ChangeType.UPDATED);
+        private long limit = Long.MAX_VALUE;
+
+        /**
+         * Only reports files under this relative directory (null or "" for everything).
+         */
+        public DiffOptions directory(String directory) {
+            this.prefix = FileUtils.directoryPrefix(directory);
+            return this;
+        }
+
+        /**
+         * Only reports these change types (UNCHANGED may be included).
+         */
+        public DiffOptions types(DiffResult.ChangeType... types) {
+            this.types = types.length == 0 ? EnumSet.noneOf(DiffResult.ChangeType.class) : EnumSet.copyOf(Arrays.asList(types));
+            return this;
+        }
+
+        /**
+         * Also reports UNCHANGED entries. Unchanged directories can then no longer be skipped.
+         */
+        public DiffOptions includeUnchanged() {
+            this.types.add(DiffResult.ChangeType.UNCHANGED);
+            return this;
+        }
+
+        /**
+         * Stops after this many results.
+         */
+        public DiffOptions limit(long limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit must not be negative, got: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+    }
+
+    /**
+     * The merge of two snapshot cursors, one result at a time. Unless UNCHANGED entries are
+     * wanted, directories with the same Merkle hash in both snapshots are skipped with a seek.
+     */
+    private static class DiffIterator implements Iterator<DiffResult> {
+        private final Cursor<FileMetadata> cursorA;
+        private final Cursor<FileMetadata> cursorB;
+        private final Map<String, String> hashesA;
+        private final Map<String, String> hashesB;
+        private final String prefix;
+        private final String endKey; // Exclusive upper bound of the keys to merge, null for none
+        private final Set<DiffResult.ChangeType> types;
+        private final boolean skipUnchanged;
+        private long remaining;
+        // Directory of the last visited key. Its ancestors are known to differ,
+        // otherwise we would have skipped them, so they are not checked again.
+        private String checkedDir;
+        private DiffResult next;
+
+        /**
+         * @param fromKey First key to merge (null to start at the directory prefix).
+         * @param endKey  Key to stop before (null to run to the end of the prefix).
+         */
+        DiffIterator(Snapshot snapshotA, Snapshot snapshotB, DiffOptions options, String fromKey, String endKey) {
+            this.prefix = options.prefix;
+            this.endKey = endKey;
+            this.types = EnumSet.copyOf(options.types);
+            this.remaining = options.limit;
+            this.skipUnchanged = !types.contains(DiffResult.ChangeType.UNCHANGED);
+            this.hashesA = skipUnchanged && snapshotA != null ? snapshotA.getDirectoryHashes() : Map.of();
+            this.hashesB = skipUnchanged && snapshotB != null ? snapshotB.getDirectoryHashes() : Map.of();
+            String start = fromKey != null && fromKey.compareTo(prefix) > 0 ? fromKey : prefix;
+            this.cursorA = openCursor(snapshotA, start);
+            this.cursorB = openCursor(snapshotB, start);
+            this.next = types.isEmpty() ? null : computeNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public DiffResult next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            DiffResult result = next;
+            next = computeNext();
+            return result;
+        }
+
+        private DiffResult computeNext() {
+            while (remaining > 0) {
+                String keyA = peekInRange(cursorA);
+                String keyB = peekInRange(cursorB);
+                if (keyA == null && keyB == null) {
+                    return null;
+                }
+                String key = keyA == null ? keyB : keyB == null ? keyA : (keyA.compareTo(keyB) <= 0 ? keyA : keyB);
+
+                if (skipUnchanged) {
+                    String unchangedDir = findUnchangedDirectory(key, checkedDir, hashesA, hashesB);
+                    if (unchangedDir != null) {
+                        if (unchangedDir.isEmpty()) {
+                            return null; // The whole snapshot is unchanged
+                        }
+                        // Seek both cursors to the first key after everything under the directory
+                        String end = unchangedDir + (char) (File.separatorChar + 1);
+                        cursorA.seek(end);
+                        cursorB.seek(end);
+                        continue;
+                    }
+                    checkedDir = MerkleHasher.parentOf(key);
+                }
+
+                DiffResult result;
+                int comp = keyA == null ? 1 : keyB == null ? -1 : keyA.compareTo(keyB);
+                if (comp < 0) {
+                    // File exists only in snapshot A -> it was deleted
+                    result = DiffResult.deleted(cursorA.next());
+                } else if (comp > 0) {
+                    // File exists only in snapshot B -> it was added
+                    result = DiffResult.added(cursorB.next());
                 } else {
-                    differences.add(DiffResult.unchanged(fileA)); // Optional: usually we skip unchanged
+                    // File exists in both -> check if it was updated
+                    FileMetadata fileA = cursorA.next();
+                    FileMetadata fileB = cursorB.next();
+                    result = fileA.hasSameContent(fileB)
+                            ? DiffResult.unchanged(fileA) : DiffResult.updated(fileA, fileB);
                 }
-                i++;
-                j++;
+                if (types.contains(result.getChangeType())) {
+                    remaining--;
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        // The next key of the cursor, or null once it leaves the key prefix or range.
+        private String peekInRange(Cursor<FileMetadata> cursor) {
+            String key = cursor.peekKey();
+            return key != null && key.startsWith(prefix) && (endKey == null || key.compareTo(endKey) < 0) ? key : null;
+        }
+    }
+
+    /**
+     * Same as compareChanges(), with renamed and moved files reported as MOVED
+     * instead of a DELETED plus an ADDED entry (see detectMoves). Large snapshots are
+     * merged in parallel (see compareParallel).
+     *
+     * @param snapshotA The older snapshot (can be null to simulate an empty snapshot).
+     * @param snapshotB The newer snapshot.
+     * @return The changes, in path order (MOVED and COPIED entries sorted by their new path).
+     */
+    public List<DiffResult> compareWithMoves(Snapshot snapshotA, Snapshot snapshotB) {
+        return detectMoves(compareParallel(snapshotA, snapshotB));
+    }
+
+    /**
+     * Pairs DELETED and ADDED entries that have the same content hash, in O(n):
+     * the deleted files are put in a hash map keyed by their raw hash, and every added file
+     * looks up its hash there. A match becomes one MOVED entry. An added file whose content
+     * matches a file that was already moved becomes COPIED (the content was duplicated).
+     * Empty files all share one hash, so they are never paired.
+     *
+     * @param changes Changes from compare() or compareChanges(), in path order.
+     * @return The changes with moves and copies detected, in path order.
+     */
+    public List<DiffResult> detectMoves(List<DiffResult> changes) {
+        Map<Object, Deque<FileMetadata>> deletedByHash = new HashMap<>();
+        for (DiffResult change : changes) {
+            if (change.getChangeType() == DiffResult.ChangeType.DELETED && change.getOldFileMeta().getFileSize() > 0) {
+                deletedByHash.computeIfAbsent(contentKey(change.getOldFileMeta()), h -> new ArrayDeque<>())
+                        .add(change.getOldFileMeta());
+            }
+        }
+        if (deletedByHash.isEmpty()) {
+            return changes;
+        }
+
+        Map<Object, FileMetadata> movedByHash = new HashMap<>(); // Hash -> a file moved with that content
+        Set<String> movedPaths = new HashSet<>();                // Old paths consumed by a move
+        List<DiffResult> paired = new ArrayList<>(changes.size());
+        for (DiffResult change : changes) {
+            if (change.getChangeType() != DiffResult.ChangeType.ADDED) {
+                paired.add(change);
+                continue;
+            }
+            FileMetadata added = change.getNewFileMeta();
+            Object key = contentKey(added);
+            Deque<FileMetadata> candidates = deletedByHash.get(key);
+            FileMetadata copySource;
+            if (candidates != null && !candidates.isEmpty()) {
+                FileMetadata source = candidates.poll();
+                movedPaths.add(source.getFilePath());
+                movedByHash.put(key, source);
+                paired.add(DiffResult.moved(source, added));
+            } else if ((copySource = movedByHash.get(key)) != null) {
+                paired.add(DiffResult.copied(copySource, added));
+            } else {
+                paired.add(change);
             }
         }
 
-        // Add any remaining files from listA (deleted)
-        while (i < listA.size()) {
-            differences.add(DiffResult.deleted(listA.get(i)));
-            i++;
+        // Drop the DELETED entries that became part of a move
+        List<DiffResult> result = new ArrayList<>(paired.size());
+        for (DiffResult change : paired) {
+            if (change.getChangeType() != DiffResult.ChangeType.DELETED || !movedPaths.contains(change.getFilePath())) {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    // The map key of a file's content: its raw hash, or the hash string if it is not SHA-256 hex.
+    private static Object contentKey(FileMetadata file) {
+        byte[] hash = file.getHashBytes();
+        return hash != null ? ByteBuffer.wrap(hash) : file.getFileHash();
+    }
+
+    /**
+     * Returns the outermost directory containing 'key' whose Merkle hash is the same
+     * in both snapshots, or null if there is none. Directories that are ancestors of
+     * 'checkedDir' were already found to differ and are skipped.
+     */
+    private static String findUnchangedDirectory(String key, String checkedDir,
+                                                 Map<String, String> hashesA, Map<String, String> hashesB) {
+        if (checkedDir == null && sameHash(MerkleHasher.ROOT, hashesA, hashesB)) {
+            return MerkleHasher.ROOT;
         }
-        // Add any remaining files from listB (added)
-        while (j < listB.size()) {
-            differences.add(DiffResult.added(listB.get(j)));
-            j++;
+        for (int sep = key.indexOf(File.separatorChar); sep >= 0; sep = key.indexOf(File.separatorChar, sep + 1)) {
+            String dir = key.substring(0, sep);
+            if (checkedDir != null && MerkleHasher.isAncestorOrSelf(dir, checkedDir)) {
+                continue; // Already known to differ
+            }
+            if (sameHash(dir, hashesA, hashesB)) {
+                return dir;
+            }
         }
+        return null;
+    }
 
-        return differences;
+    private static boolean sameHash(String dir, Map<String, String> hashesA, Map<String, String> hashesB) {
+        String hashA = hashesA.get(dir);
+        return hashA != null && hashA.equals(hashesB.get(dir));
+    }
+
+    /**
+     * Opens a cursor at the start of the key range; a null snapshot behaves like an empty one.
+     */
+    private static Cursor<FileMetadata> openCursor(Snapshot snapshot, String prefix) {
+        OrderedIndex<FileMetadata> tree = snapshot != null ? snapshot.getFileTree() : new BST<>();
+        return tree.cursor(prefix);
     }
 
     /**
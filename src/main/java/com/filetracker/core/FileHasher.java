@@ -0,0 +1,122 @@
+package com.filetracker.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * FileHasher
+ * -----------
+ * Computes the SHA-256 hash of a file in constant memory.
+ * Small and medium files are streamed through a reusable direct buffer (one per thread).
+ * Files at or above the mmap threshold are memory-mapped in fixed-size windows,
+ * so even multi-GB files never land on the Java heap.
+ */
+public class FileHasher {
+
+    /** Size of the per-thread direct read buffer. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Size of each memory-mapped window for large files. */
+    public static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // Files at or above this size are memory-mapped instead of streamed.
+    private static volatile long mmapThreshold =
+            Long.getLong("filetracker.hash.mmapThreshold", 16L * 1024 * 1024);
+
+    // One buffer and one digest per thread, so parallel scans never share state.
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(FileHasher::newDigest);
+
+    private FileHasher() {
+    }
+
+    /**
+     * Sets the file size at which hashing switches from streaming to memory mapping.
+     *
+     * @param thresholdBytes The threshold in bytes (must not be negative).
+     */
+    public static void setMmapThreshold(long thresholdBytes) {
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("mmap threshold must not be negative: " + thresholdBytes);
+        }
+        mmapThreshold = thresholdBytes;
+    }
+
+    /**
+     * @return The file size at which hashing switches to memory mapping.
+     */
+    public static long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
+    /**
+     * Hashes a file whose size is already known (e.g. from the walker's attributes).
+     *
+     * @param path The file to hash.
+     * @param size The size of the file in bytes, used to choose streaming or mapping.
+     * @return The SHA-256 hash as a lowercase hex string.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String hash(Path path, long size) throws IOException {
+        // Convert byte array to hex string (Java 17+ has HexFormat)
+        return HexFormat.of().formatHex(hashBytes(path, size));
+    }
+
+    /**
+     * Same as {@link #hash(Path, long)}, but returns the raw digest.
+     *
+     * @return The 32-byte SHA-256 hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public static byte[] hashBytes(Path path, long size) throws IOException {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (size > 0 && size >= mmapThreshold) {
+                updateMapped(digest, channel);
+            } else {
+                updateStreamed(digest, channel);
+            }
+        } catch (IOException e) {
+            digest.reset();
+            throw e;
+        }
+        return digest.digest();
+    }
+
+    private static void updateStreamed(MessageDigest digest, FileChannel channel) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void updateMapped(MessageDigest digest, FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        for (long position = 0; position < fileSize; position += MAP_WINDOW_SIZE) {
+            long windowSize = Math.min(MAP_WINDOW_SIZE, fileSize - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            digest.update(window);
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found!", e);
+        }
+    }
+}
@@ -2,18 +2,66 @@ package com.filetracker.core;
 
 import com.filetracker.models.FileMetadata;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 
 public class FileUtils {
 
+    /**
+     * Default number of hash workers used by the parallel scan.
+     * Can be overridden with the system property "filetracker.scan.workers".
+     */
+    public static final int DEFAULT_SCAN_WORKERS =
+            Integer.getInteger("filetracker.scan.workers", Runtime.getRuntime().availableProcessors());
+
+    // How many files may be queued or hashing per worker before the walker blocks (backpressure).
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+
 
     public static List<FileMetadata> scanDirectory(String directoryPath, Path baseDir) throws IOException {
-        List<FileMetadata> fileList = new ArrayList<>();
+        return scanDirectory(directoryPath, baseDir, 1, null);
+    }
+
+
+    public static List<FileMetadata> scanDirectory(String directoryPath, Path baseDir, int workerCount) throws IOException {
+        return scanDirectory(directoryPath, baseDir, workerCount, null);
+    }
+
+
+    /**
+     * Scans a directory and builds the metadata of every regular file in it.
+     * With more than one worker, the walker thread only enumerates files and hands
+     * each one to a fixed pool of hash workers. At most (workers * 4) files are in flight,
+     * so the walker blocks instead of queueing the whole tree in memory.
+     * The returned list is in the same order as the sequential scan.
+     *
+     * @param directoryPath The directory to scan.
+     * @param baseDir       The base directory used to compute relative paths.
+     * @param workerCount   The number of hash workers (1 or less scans on the calling thread).
+     * @param hashLookup    Known hashes to reuse instead of reading files (may be null).
+     * @return The metadata of every regular file, in walk order.
+     * @throws IOException If the directory does not exist or cannot be walked.
+     */
+    public static List<FileMetadata> scanDirectory(String directoryPath, Path baseDir, int workerCount,
+                                                   HashLookup hashLookup) throws IOException {
         Path startPath = Paths.get(directoryPath);
 
         // Check if the path exists and is a directory
@@ -24,6 +72,16 @@ public class FileUtils {
             throw new IOException("Error: '" + directoryPath + "' is not a directory.");
         }
 
+        if (workerCount <= 1) {
+            return scanSequential(startPath, baseDir, hashLookup);
+        }
+        return scanParallel(startPath, baseDir, workerCount, hashLookup);
+    }
+
+
+    private static List<FileMetadata> scanSequential(Path startPath, Path baseDir, HashLookup hashLookup) throws IOException {
+        List<FileMetadata> fileList = new ArrayList<>();
+
         // Use Files.walkFileTree for efficient and controlled recursion.
         // This is Java's built-in way to perform a DFS.
         Files.walkFileTree(startPath, new SimpleFileVisitor<Path>() {
@@ -31,12 +89,9 @@ public class FileUtils {
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                 // This method is called for every file found during the walk.
                 if (attrs.isRegularFile()) { // Ignore symbolic links, directories, etc.
-                    try {
-                        FileMetadata metadata = new FileMetadata(file, baseDir);
+                    FileMetadata metadata = readMetadata(file, baseDir, attrs, hashLookup);
+                    if (metadata != null) {
                         fileList.add(metadata);
-                    } catch (IOException e) {
-                        // Log the error for a specific file but continue processing others
-                        System.err.println("Could not read file: " + file + " - " + e.getMessage());
                     }
                 }
                 return FileVisitResult.CONTINUE; // Continue the traversal
@@ -54,6 +109,174 @@ public class FileUtils {
     }
 
 
+    private static List<FileMetadata> scanParallel(Path startPath, Path baseDir, int workerCount,
+                                                   HashLookup hashLookup) throws IOException {
+        List<FileMetadata> fileList = new ArrayList<>();
+        // Futures in walk order. Completed ones at the head are drained as we go,
+        // so this only holds the files that are still in flight.
+        Deque<Future<FileMetadata>> pending = new ArrayDeque<>();
+        Semaphore inFlight = new Semaphore(workerCount * IN_FLIGHT_PER_WORKER);
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, hashWorkerFactory());
+
+        try {
+            // The walker thread only enumerates; hashing happens on the worker pool.
+            Files.walkFileTree(startPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile()) {
+                        try {
+                            inFlight.acquire(); // Blocks when the workers fall behind
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Scan interrupted at: " + file);
+                        }
+                        pending.addLast(workers.submit(() -> {
+                            try {
+                                return readMetadata(file, baseDir, attrs, hashLookup);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }));
+                        drainCompleted(pending, fileList, false);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    System.err.println("Failed to access: " + file + " - " + exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            drainCompleted(pending, fileList, true);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        return fileList;
+    }
+
+
+    /**
+     * Moves finished results from the head of the pending queue into the result list,
+     * keeping walk order. When 'waitForAll' is true, blocks until every task is done.
+     */
+    private static void drainCompleted(Deque<Future<FileMetadata>> pending, List<FileMetadata> fileList,
+                                       boolean waitForAll) throws IOException {
+        while (!pending.isEmpty() && (waitForAll || pending.peekFirst().isDone())) {
+            try {
+                FileMetadata metadata = pending.pollFirst().get();
+                if (metadata != null) {
+                    fileList.add(metadata);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scan interrupted while waiting for hash workers.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Error: Hash worker failed - " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+
+    /**
+     * Runs 'task' on every item on a pool of hash workers, like the parallel scan:
+     * at most (workers * 4) items are in flight, so a long (or lazy) iterator is consumed
+     * only as fast as the workers go. With 1 worker or less, everything runs on the calling thread.
+     * Returns once every task has finished. Tasks are expected to report their own I/O errors.
+     *
+     * @param items       The items to process.
+     * @param workerCount The number of workers.
+     * @param task        The work to do for each item.
+     * @throws IOException If interrupted while waiting for the workers.
+     */
+    public static <T> void forEachParallel(Iterator<T> items, int workerCount, Consumer<T> task) throws IOException {
+        if (workerCount <= 1) {
+            items.forEachRemaining(task);
+            return;
+        }
+        int permits = workerCount * IN_FLIGHT_PER_WORKER;
+        Semaphore inFlight = new Semaphore(permits);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, hashWorkerFactory());
+        try {
+            while (items.hasNext() && failure.get() == null) {
+                T item = items.next();
+                inFlight.acquire(); // Blocks when the workers fall behind
+                workers.execute(() -> {
+                    try {
+                        task.accept(item);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(permits); // Every task has finished once all permits are back
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for hash workers.");
+        } finally {
+            workers.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+
+    /**
+     * Builds the metadata of one file. Returns null (and logs) if the file cannot be read,
+     * so one unreadable file does not abort the whole scan.
+     */
+    private static FileMetadata readMetadata(Path file, Path baseDir, BasicFileAttributes attrs,
+                                             HashLookup hashLookup) {
+        try {
+            return new FileMetadata(file, baseDir, attrs, hashLookup); // Reuse the walker's attributes
+        } catch (IOException e) {
+            // Log the error for a specific file but continue processing others
+            System.err.println("Could not read file: " + file + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    private static ThreadFactory hashWorkerFactory() {
+        AtomicInteger counter = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "hash-worker-" + counter.getAndIncrement());
+            thread.setDaemon(true); // Never keep the CLI alive because of a stuck read
+            return thread;
+        };
+    }
+
+
+    /**
+     * Turns a relative directory (e.g. "src" or "src/") into the key prefix shared by every
+     * file below it ("src" + separator). Since sorted keys with a common prefix are contiguous,
+     * a cursor can seek to this prefix and stop at the first key that does not start with it.
+     *
+     * @param directory The relative directory; null or empty means the whole snapshot.
+     * @return The key prefix, or "" for the whole snapshot.
+     */
+    public static String directoryPrefix(String directory) {
+        if (directory == null) {
+            return "";
+        }
+        String trimmed = directory.trim();
+        while (trimmed.endsWith("/") || trimmed.endsWith(File.separator)) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? "" : trimmed.replace('/', File.separatorChar) + File.separator;
+    }
+
+
     public static List<String> listAllFiles(String directoryPath) throws IOException {
         List<String> paths = new ArrayList<>();
         Path startPath = Paths.get(directoryPath);
@@ -69,4 +292,4 @@ public class FileUtils {
         });
         return paths;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,463 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HashCache
+ * ----------
+ * A persistent, memory-mapped cache of file hashes that survives process restarts.
+ * Entries are keyed by (device, inode, size, mtime, ctime) and map to the raw SHA-256 of the file.
+ * If any of these change, the key changes and the file is simply hashed again.
+ * <p>
+ * The file is one open-addressing hash table with linear probing and fixed-size slots,
+ * so a lookup touches one or two pages of the mapping instead of reading the file.
+ * Each slot also remembers which snapshot root and relative path it belongs to.
+ * After every snapshot, {@link #evictMissing} drops the entries of that root that
+ * no longer match a file in the snapshot (deleted, renamed or modified files).
+ * <p>
+ * <p>
+ * A file changed within the racy window before the scan started is not recorded:
+ * on coarse-grained file systems it can be rewritten without its mtime or ctime moving,
+ * and the stale hash would then be served for it. Such files are simply hashed again next time.
+ * <p>
+ * The table is guarded by the cache's lock, so one cache can be shared by the parallel hash workers.
+ */
+public class HashCache implements HashLookup, Closeable {
+
+    private static final int MAGIC = 0x46544843; // "FTHC"
+    private static final int VERSION = 1;
+
+    // ---- Header layout ---- //
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_LIVE = 12;
+    private static final int H_USED = 16;   // live + tombstones
+    private static final int H_CLEAN = 20;  // 1 if the cache was closed properly
+
+    // ---- Slot layout ---- //
+    private static final int SLOT_SIZE = 96;
+    private static final int S_STATE = 0;
+    private static final int S_DEV = 8;
+    private static final int S_INO = 16;
+    private static final int S_SIZE = 24;
+    private static final int S_MTIME = 32;
+    private static final int S_CTIME = 40;
+    private static final int S_ROOT = 48;
+    private static final int S_PATH = 56;
+    private static final int S_HASH = 64;
+    private static final int HASH_BYTES = 32;
+
+    private static final int EMPTY = 0;
+    private static final int LIVE = 1;
+    private static final int TOMBSTONE = 2;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final double MAX_LOAD = 0.7;
+
+    private static final boolean UNIX_VIEW =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final Path cacheFile;
+    private final FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int liveCount;
+    private int usedCount;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile long racyCutoffNanos; // Files changed at or after this are not recorded
+
+    private HashCache(Path cacheFile, FileChannel channel) {
+        this.cacheFile = cacheFile;
+        this.channel = channel;
+        this.racyCutoffNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * Opens (or creates) the cache file. A cache that was not closed properly
+     * is discarded and started empty, since a half-written slot cannot be trusted.
+     *
+     * @param cacheFile The path of the cache file.
+     * @return The opened cache.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static HashCache open(Path cacheFile) throws IOException {
+        if (cacheFile.getParent() != null) {
+            Files.createDirectories(cacheFile.getParent());
+        }
+        FileChannel channel = FileChannel.open(cacheFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HashCache cache = new HashCache(cacheFile, channel);
+        try {
+            cache.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    private void load() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize >= HEADER_SIZE) {
+            MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            int storedCapacity = existing.getInt(H_CAPACITY);
+            boolean valid = existing.getInt(H_MAGIC) == MAGIC
+                    && existing.getInt(H_VERSION) == VERSION
+                    && existing.getInt(H_CLEAN) == 1
+                    && Integer.bitCount(storedCapacity) == 1
+                    && fileSize == HEADER_SIZE + (long) storedCapacity * SLOT_SIZE;
+            if (valid) {
+                table = existing;
+                capacity = storedCapacity;
+                liveCount = existing.getInt(H_LIVE);
+                usedCount = existing.getInt(H_USED);
+                markDirty();
+                return;
+            }
+            System.err.println("Hash cache '" + cacheFile + "' is stale or corrupt - starting empty.");
+        }
+        reset(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Sets the racy cutoff for the scan about to start: files whose mtime or ctime is at
+     * or after it are hashed but not recorded. Until this is called, the time the cache
+     * was opened is used.
+     *
+     * @param racyCutoffMillis The scan's start time minus the racy window, in epoch milliseconds.
+     */
+    public void beginScan(long racyCutoffMillis) {
+        racyCutoffNanos = TimeUnit.MILLISECONDS.toNanos(racyCutoffMillis);
+    }
+
+    // ---------- HashLookup ---------- //
+
+    @Override
+    public byte[] lookup(Path file, String relativePath, BasicFileAttributes attrs) {
+        long[] key = keyOf(file, attrs); // The extra stat happens outside the lock
+        return key != null ? lookupKey(key) : null;
+    }
+
+    private synchronized byte[] lookupKey(long[] key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        hits.incrementAndGet();
+        byte[] hash = new byte[HASH_BYTES];
+        table.get(slotOffset(slot) + S_HASH, hash);
+        return hash;
+    }
+
+    @Override
+    public void record(Path file, String relativePath, BasicFileAttributes attrs, byte[] hash) {
+        long[] key = keyOf(file, attrs);
+        if (key == null || key[3] >= racyCutoffNanos || key[4] >= racyCutoffNanos) {
+            return; // Unknown or racily clean -> not trusted next time
+        }
+        long rootId = rootIdOf(file, relativePath);
+        long pathHash = hash64(relativePath);
+        synchronized (this) {
+            put(key, rootId, pathHash, hash);
+        }
+    }
+
+    /**
+     * @return How many lookups were answered from the cache since it was opened.
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of live entries in the cache.
+     */
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    // ---------- Eviction ---------- //
+
+    /**
+     * Drops every entry recorded under the given snapshot root that no longer matches
+     * a file of the snapshot (same relative path, size and mtime). This removes entries
+     * of deleted and renamed files as well as superseded versions of modified files.
+     * Entries of other roots are left alone.
+     *
+     * @param rootPath The absolute root path the snapshot was taken of.
+     * @param files    The files of the snapshot that was just taken.
+     * @return The number of evicted entries.
+     */
+    public synchronized int evictMissing(String rootPath, Iterable<FileMetadata> files) {
+        long rootId = hash64(rootPath);
+        Set<Long> current = new HashSet<>();
+        for (FileMetadata file : files) {
+            current.add(entryId(hash64(file.getFilePath()), file.getFileSize(), file.getLastModified()));
+        }
+
+        int evicted = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            if (table.getInt(offset + S_STATE) != LIVE || table.getLong(offset + S_ROOT) != rootId) {
+                continue;
+            }
+            long mtimeMillis = TimeUnit.NANOSECONDS.toMillis(table.getLong(offset + S_MTIME));
+            long id = entryId(table.getLong(offset + S_PATH), table.getLong(offset + S_SIZE), mtimeMillis);
+            if (!current.contains(id)) {
+                table.putInt(offset + S_STATE, TOMBSTONE);
+                liveCount--;
+                evicted++;
+            }
+        }
+        writeCounts();
+        return evicted;
+    }
+
+    /**
+     * Writes the mapped table back to disk.
+     */
+    public synchronized void flush() {
+        writeCounts();
+        table.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        writeCounts();
+        table.putInt(H_CLEAN, 1);
+        table.force();
+        channel.close();
+    }
+
+    // ---------- Table internals ---------- //
+
+    private int findSlot(long[] key) {
+        int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        for (int probes = 0; probes < capacity; probes++) {
+            int offset = slotOffset(slot);
+            int state = table.getInt(offset + S_STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == LIVE && keyMatches(offset, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void put(long[] key, long rootId, long pathHash, byte[] hash) {
+        if (usedCount + 1 > capacity * MAX_LOAD) {
+            rehash();
+        }
+
+        int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        int firstTombstone = -1;
+        while (true) {
+            int offset = slotOffset(slot);
+            int state = table.getInt(offset + S_STATE);
+            if (state == EMPTY) {
+                break;
+            }
+            if (state == LIVE && keyMatches(offset, key)) {
+                writeSlot(offset, key, rootId, pathHash, hash); // Same key -> refresh in place
+                return;
+            }
+            if (state == TOMBSTONE && firstTombstone < 0) {
+                firstTombstone = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (firstTombstone >= 0) {
+            slot = firstTombstone; // Reuse a dead slot; the used count does not grow
+        } else {
+            usedCount++;
+        }
+        writeSlot(slotOffset(slot), key, rootId, pathHash, hash);
+        liveCount++;
+    }
+
+    private void writeSlot(int offset, long[] key, long rootId, long pathHash, byte[] hash) {
+        table.putLong(offset + S_DEV, key[0]);
+        table.putLong(offset + S_INO, key[1]);
+        table.putLong(offset + S_SIZE, key[2]);
+        table.putLong(offset + S_MTIME, key[3]);
+        table.putLong(offset + S_CTIME, key[4]);
+        table.putLong(offset + S_ROOT, rootId);
+        table.putLong(offset + S_PATH, pathHash);
+        table.put(offset + S_HASH, hash);
+        table.putInt(offset + S_STATE, LIVE); // Published last
+    }
+
+    private boolean keyMatches(int offset, long[] key) {
+        return table.getLong(offset + S_DEV) == key[0]
+                && table.getLong(offset + S_INO) == key[1]
+                && table.getLong(offset + S_SIZE) == key[2]
+                && table.getLong(offset + S_MTIME) == key[3]
+                && table.getLong(offset + S_CTIME) == key[4];
+    }
+
+    /**
+     * Rebuilds the table, doubling it if it is genuinely full (not just full of tombstones).
+     */
+    private void rehash() {
+        int newCapacity = liveCount + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity;
+
+        // Copy the live slots out, then rebuild the (possibly larger) table in place.
+        ByteBuffer live = ByteBuffer.allocate(liveCount * SLOT_SIZE);
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            if (table.getInt(offset + S_STATE) == LIVE) {
+                live.put(table.slice(offset, SLOT_SIZE));
+            }
+        }
+        live.flip();
+
+        try {
+            reset(newCapacity);
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not grow hash cache '" + cacheFile + "'.", e);
+        }
+
+        byte[] hash = new byte[HASH_BYTES];
+        long[] key = new long[5];
+        while (live.hasRemaining()) {
+            int base = live.position();
+            key[0] = live.getLong(base + S_DEV);
+            key[1] = live.getLong(base + S_INO);
+            key[2] = live.getLong(base + S_SIZE);
+            key[3] = live.getLong(base + S_MTIME);
+            key[4] = live.getLong(base + S_CTIME);
+            live.get(base + S_HASH, hash);
+            put(key, live.getLong(base + S_ROOT), live.getLong(base + S_PATH), hash);
+            live.position(base + SLOT_SIZE);
+        }
+        writeCounts();
+    }
+
+    /**
+     * Resizes the file to an empty table of the given capacity and maps it.
+     */
+    private void reset(int newCapacity) throws IOException {
+        long newSize = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+        if (channel.size() > newSize) {
+            channel.truncate(newSize);
+        }
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize); // Grows the file if needed
+        for (int offset = 0; offset < newSize; offset += Long.BYTES) {
+            table.putLong(offset, 0L); // All slots EMPTY
+        }
+        capacity = newCapacity;
+        liveCount = 0;
+        usedCount = 0;
+        table.putInt(H_MAGIC, MAGIC);
+        table.putInt(H_VERSION, VERSION);
+        table.putInt(H_CAPACITY, capacity);
+        writeCounts();
+        markDirty();
+    }
+
+    private void writeCounts() {
+        table.putInt(H_LIVE, liveCount);
+        table.putInt(H_USED, usedCount);
+    }
+
+    private void markDirty() {
+        table.putInt(H_CLEAN, 0);
+        table.force();
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // ---------- Keys ---------- //
+
+    /**
+     * Builds the (dev, ino, size, mtime, ctime) key of a file, times in nanoseconds.
+     * On platforms without the "unix" attribute view the file key's hash and the creation time
+     * stand in for inode and ctime. Returns null if the file cannot be stat'ed.
+     */
+    private static long[] keyOf(Path file, BasicFileAttributes attrs) {
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (UNIX_VIEW) {
+            try {
+                Map<String, Object> unix = Files.readAttributes(file, "unix:dev,ino,ctime", LinkOption.NOFOLLOW_LINKS);
+                long ctime = ((FileTime) unix.get("ctime")).to(TimeUnit.NANOSECONDS);
+                return new long[]{(Long) unix.get("dev"), (Long) unix.get("ino"), attrs.size(), mtime, ctime};
+            } catch (IOException | UnsupportedOperationException e) {
+                return null;
+            }
+        }
+        Object fileKey = attrs.fileKey();
+        long ino = fileKey != null ? fileKey.hashCode() : hash64(file.toAbsolutePath().toString());
+        return new long[]{0L, ino, attrs.size(), mtime, attrs.creationTime().to(TimeUnit.NANOSECONDS)};
+    }
+
+    /**
+     * Recovers the snapshot root from a file and its relative path ("/root/a/b.txt" - "a/b.txt" = "/root").
+     */
+    private static long rootIdOf(Path file, String relativePath) {
+        Path absolute = file.toAbsolutePath();
+        int depth = relativePath.isEmpty() ? 0 : Path.of(relativePath).getNameCount();
+        Path root = absolute;
+        for (int i = 0; i < depth && root != null; i++) {
+            root = root.getParent();
+        }
+        return hash64(root != null ? root.toString() : "");
+    }
+
+    private static long entryId(long pathHash, long size, long mtimeMillis) {
+        return mix(new long[]{pathHash, size, mtimeMillis});
+    }
+
+    private static long mix(long[] values) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (long value : values) {
+            h ^= value;
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a string (stable across runs, unlike String.hashCode's 32 bits).
+     */
+    static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
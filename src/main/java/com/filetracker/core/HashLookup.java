@@ -0,0 +1,65 @@
+package com.filetracker.core;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * HashLookup
+ * -----------
+ * A source of already-known file hashes, consulted before a file is read and hashed.
+ * This lets a snapshot reuse hashes for files that have not changed (same path, size and mtime),
+ * turning the cost of a snapshot from "read every byte" into "stat every file".
+ * Implementations must be safe to call from several hash workers at once.
+ */
+@FunctionalInterface
+public interface HashLookup {
+    /**
+     * Returns the known hash of a file, or null if the file has to be hashed.
+     *
+     * @param file         The absolute or walk-relative path of the file.
+     * @param relativePath The path relative to the snapshot's base directory (the BST key).
+     * @param attrs        The attributes read by the directory walker.
+     * @return The raw 32-byte SHA-256 hash, or null if unknown.
+     */
+    byte[] lookup(Path file, String relativePath, BasicFileAttributes attrs);
+
+    /**
+     * Called after a file had to be hashed, so the lookup can remember the result.
+     * The default implementation does nothing.
+     *
+     * @param file         The path of the file.
+     * @param relativePath The path relative to the snapshot's base directory.
+     * @param attrs        The attributes read by the directory walker.
+     * @param hash         The freshly computed raw SHA-256 hash; implementations must not modify it.
+     */
+    default void record(Path file, String relativePath, BasicFileAttributes attrs, byte[] hash) {
+    }
+
+    /**
+     * Combines two lookups: 'first' is asked before 'second', and fresh hashes are recorded in both.
+     * Either argument may be null.
+     *
+     * @return The combined lookup, or null if both are null.
+     */
+    static HashLookup chain(HashLookup first, HashLookup second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return new HashLookup() {
+            @Override
+            public byte[] lookup(Path file, String relativePath, BasicFileAttributes attrs) {
+                byte[] hash = first.lookup(file, relativePath, attrs);
+                return hash != null ? hash : second.lookup(file, relativePath, attrs);
+            }
+
+            @Override
+            public void record(Path file, String relativePath, BasicFileAttributes attrs, byte[] hash) {
+                first.record(file, relativePath, attrs, hash);
+                second.record(file, relativePath, attrs, hash);
+            }
+        };
+    }
+}
@@ -2,71 +2,106 @@ package com.filetracker.core;
 
 import com.filetracker.models.Snapshot;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * LinkedList
  * -----------
- * A custom implementation of a singly Linked List to store Snapshot objects.
- * This list maintains a chronological timeline of snapshots.
+ * The chronological timeline of Snapshot objects.
  * New snapshots are appended to the end of the list.
+ * The name is kept for compatibility, but the timeline is backed by a growable array
+ * so that every index lookup (diff, restore, compression) is O(1) instead of a walk from the head.
+ * Two side indexes are maintained on append:
+ * - a hash map from snapshotId to Snapshot, for O(1) lookup by ID;
+ * - a sorted array of timestamps, for O(log n) "snapshot as of a given time" queries.
  */
 public class LinkedList {
 
-   
-    private class Node {
-        Snapshot data; // The Snapshot object stored in this node
-        Node next;     // Reference to the next node in the list
+    private static final int INITIAL_CAPACITY = 16;
 
-        Node(Snapshot data) {
-            this.data = data;
-            this.next = null;
-        }
-    }
-
-    private Node head; // The first node in the list
-    private Node tail; // The last node in the list (for efficient appending)
-    private int size;  // The number of nodes (snapshots) in the list
+    private Snapshot[] snapshots;            // Snapshots in timeline order
+    private long[] timestamps;               // Non-decreasing timestamps (epoch millis), parallel to snapshots
+    private Map<Integer, Snapshot> byId;     // snapshotId -> Snapshot
+    private int size;                        // The number of snapshots in the list
 
     /**
-     * Constructor. Initializes an empty Linked List.
+     * Constructor. Initializes an empty timeline.
      */
     public LinkedList() {
-        head = null;
-        tail = null;
+        snapshots = new Snapshot[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        byId = new HashMap<>();
         size = 0;
     }
 
     /**
      * Appends a new Snapshot to the END of the list.
-     * This operation is O(1) constant time due to the 'tail' pointer.
+     * This operation is amortized O(1) constant time.
      *
      * @param snapshot The Snapshot to be added to the timeline.
      */
     public void append(Snapshot snapshot) {
-        Node newNode = new Node(snapshot);
-
-        if (tail == null) {
-            // If the list is empty, the new node becomes both head and tail.
-            head = newNode;
-            tail = newNode;
-        } else {
-            // Link the new node after the current tail and update the tail pointer.
-            tail.next = newNode;
-            tail = newNode;
+        if (size == snapshots.length) {
+            snapshots = Arrays.copyOf(snapshots, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+
+        // Keep the timestamp index sorted even if the clock went backwards between snapshots.
+        long timestamp = snapshot.getTimestampMillis();
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            timestamp = timestamps[size - 1];
         }
+
+        snapshots[size] = snapshot;
+        timestamps[size] = timestamp;
+        byId.put(snapshot.getSnapshotId(), snapshot);
         size++;
     }
 
-   
+
     public Snapshot get(int index) {
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
         }
+        return snapshots[index];
+    }
 
-        Node current = head;
-        for (int i = 0; i < index; i++) {
-            current = current.next;
+    /**
+     * Returns the snapshot with the given ID. This operation is O(1).
+     *
+     * @param snapshotId The ID of the snapshot.
+     * @return The Snapshot, or null if no snapshot has this ID.
+     */
+    public Snapshot getById(int snapshotId) {
+        return byId.get(snapshotId);
+    }
+
+    /**
+     * Returns the most recent snapshot taken at or before the given time.
+     * This operation is O(log n) (binary search over the timestamp index).
+     *
+     * @param time The point in time.
+     * @return The Snapshot that was current at that time, or null if none existed yet.
+     */
+    public Snapshot getAsOf(LocalDateTime time) {
+        long millis = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        // Find the first index whose timestamp is after 'millis'; the answer is just before it.
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        return current.data;
+        return low == 0 ? null : snapshots[low - 1];
     }
 
     /**
@@ -80,7 +115,7 @@ public class LinkedList {
      * @return true if the list is empty, false otherwise.
      */
     public boolean isEmpty() {
-        return head == null;
+        return size == 0;
     }
 
     /**
@@ -90,29 +125,24 @@ public class LinkedList {
      * @return The last Snapshot, or null if the list is empty.
      */
     public Snapshot getLast() {
-        if (tail == null) {
+        if (size == 0) {
             return null;
         }
-        return tail.data;
+        return snapshots[size - 1];
     }
 
     /**
      * Returns the second-last Snapshot in the list.
      * This is a helper method for the 'diff latest' command.
-     * This operation is O(n) linear time.
+     * This operation is O(1) constant time.
      *
-     
+     * @return The second-last Snapshot, or null if the list has fewer than 2 snapshots.
      */
     public Snapshot getSecondLast() {
         if (size < 2) {
             return null;
         }
-        // Traverse to the node just before the tail.
-        Node current = head;
-        while (current.next != tail) {
-            current = current.next;
-        }
-        return current.data;
+        return snapshots[size - 2];
     }
 
     /**
@@ -125,15 +155,11 @@ public class LinkedList {
             return;
         }
 
-        Node current = head;
-        int index = 0;
         System.out.println("Snapshot History:");
         System.out.println("-----------------");
-        while (current != null) {
-            Snapshot snap = current.data;
-            System.out.println("[" + index + "] " + snap.getFormattedTimestamp() + " → " + snap.getFileTree().size() + " files");
-            current = current.next;
-            index++;
+        for (int index = 0; index < size; index++) {
+            Snapshot snap = snapshots[index];
+            System.out.println("[" + index + "] " + snap.getFormattedTimestamp() + " → " + snap.getFileCount() + " files");
         }
     }
 }
@@ -0,0 +1,299 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * MappedSnapshot
+ * ---------------
+ * A read-only Snapshot backed by a memory-mapped snapshot file (see SnapshotCodec).
+ * Opening one only reads the header; no tree is built. Lookups binary-search the block
+ * index (each block starts with a full path) and decode a single block, and cursors decode
+ * entries one at a time as they are pulled. The file's pages live in the OS page cache,
+ * so they cost almost no heap and are shared by every process that maps the same file.
+ */
+public class MappedSnapshot extends Snapshot {
+    private static final long serialVersionUID = 1L;
+
+    private final MappedIndex index;
+    private final PathFilter storedPathFilter; // Read from the file; null if the file has none
+
+    private MappedSnapshot(SnapshotCodec.Header header, MappedIndex index, PathFilter storedPathFilter,
+                           Map<String, String> storedDirectoryHashes) {
+        super(header.snapshotId, header.rootPath, header.timestamp);
+        this.index = index;
+        this.storedPathFilter = storedPathFilter;
+        if (storedDirectoryHashes != null) {
+            setDirectoryHashes(storedDirectoryHashes); // Older files without them recompute them on first use
+        }
+    }
+
+    /**
+     * Maps a snapshot file written by SnapshotCodec.
+     *
+     * @param snapshotFile The snapshot file.
+     * @return The read-only snapshot.
+     * @throws IOException If the file cannot be mapped or is not a valid snapshot file.
+     */
+    public static MappedSnapshot open(Path snapshotFile) throws IOException {
+        return wrap(SnapshotCodec.mapReadOnly(snapshotFile), snapshotFile.toString());
+    }
+
+    /**
+     * Reads a snapshot directly from a buffer holding the binary format.
+     *
+     * @param buffer The encoded snapshot (not copied; it must not change afterwards).
+     * @param source A name for the buffer, used in error messages.
+     * @return The read-only snapshot.
+     * @throws IOException If the buffer does not hold a valid snapshot.
+     */
+    public static MappedSnapshot wrap(ByteBuffer buffer, String source) throws IOException {
+        SnapshotCodec.Header header;
+        PathFilter pathFilter;
+        Map<String, String> directoryHashes;
+        try {
+            header = SnapshotCodec.readHeader(buffer, source);
+            pathFilter = header.pathFilterOffset >= 0 ? PathFilter.read(buffer, header.pathFilterOffset) : null;
+            directoryHashes = header.directoryHashesOffset >= 0
+                    ? SnapshotCodec.readDirectoryHashes(buffer, header.directoryHashesOffset) : null;
+        } catch (RuntimeException e) {
+            throw new IOException("Error: Snapshot '" + source + "' is truncated or corrupt.", e);
+        }
+        return new MappedSnapshot(header, new MappedIndex(buffer, header), pathFilter, directoryHashes);
+    }
+
+    /**
+     * Encodes a snapshot into the binary format in a heap byte array and wraps it. The result
+     * holds the same files in a fraction of the memory of a BST of FileMetadata objects
+     * (front-coded paths, varint sizes and mtimes, raw hashes: tens of bytes per file instead of
+     * several hundred); entries are decoded when they are read.
+     *
+     * @param snapshot The snapshot to compact.
+     * @return A read-only copy of the snapshot.
+     * @throws IOException If a hash is not a SHA-256 hex string.
+     */
+    public static MappedSnapshot compact(Snapshot snapshot) throws IOException {
+        return compact(snapshot, SnapshotCodec.encodeSnapshot(snapshot));
+    }
+
+    // Same, for a snapshot the caller has already encoded.
+    static MappedSnapshot compact(Snapshot snapshot, byte[] encoded) throws IOException {
+        return wrap(ByteBuffer.wrap(encoded), "snapshot #" + snapshot.getSnapshotId());
+    }
+
+    @Override
+    public OrderedIndex<FileMetadata> getFileTree() {
+        return index;
+    }
+
+    /**
+     * The filter stored in the file, read in place; older files without one get it built once.
+     */
+    @Override
+    public PathFilter getPathFilter() {
+        return storedPathFilter != null ? storedPathFilter : super.getPathFilter();
+    }
+
+    @Override
+    public void addFile(FileMetadata fileMetadata) {
+        throw new UnsupportedOperationException("Error: Snapshot #" + getSnapshotId() + " is read-only.");
+    }
+
+    @Override
+    public void addFiles(List<FileMetadata> files) {
+        throw new UnsupportedOperationException("Error: Snapshot #" + getSnapshotId() + " is read-only.");
+    }
+
+    /**
+     * The sorted entry table of a mapped snapshot file. Every method works on its own
+     * duplicate of the buffer, so one index can be used from many threads at once.
+     */
+    private static class MappedIndex implements OrderedIndex<FileMetadata> {
+        private final ByteBuffer buffer;
+        private final SnapshotCodec.Header header;
+
+        MappedIndex(ByteBuffer buffer, SnapshotCodec.Header header) {
+            this.buffer = buffer;
+            this.header = header;
+        }
+
+        /**
+         * Returns the last block whose first key is <= 'key' (0 if 'key' is before every block).
+         * Only the first key of each probed block is decoded.
+         */
+        private int findBlock(SnapshotCodec.EntryDecoder decoder, String key) {
+            int low = 0;
+            int high = header.blockCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                decoder.position(header.blockOffset(buffer, mid));
+                decoder.reset();
+                if (decoder.nextKey().compareTo(key) <= 0) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public FileMetadata search(String key) {
+            if (header.fileCount == 0) {
+                return null;
+            }
+            SnapshotCodec.EntryDecoder decoder = new SnapshotCodec.EntryDecoder(buffer, header);
+            int block = findBlock(decoder, key);
+            decoder.position(header.blockOffset(buffer, block));
+            decoder.reset();
+
+            int end = Math.min(header.fileCount, (block + 1) * header.blockSize);
+            for (int i = block * header.blockSize; i < end; i++) {
+                String entryKey = decoder.nextKey();
+                int comparison = entryKey.compareTo(key);
+                if (comparison == 0) {
+                    return decoder.finish(entryKey);
+                }
+                if (comparison > 0) {
+                    return null; // Passed the place where 'key' would be
+                }
+                decoder.skip();
+            }
+            return null;
+        }
+
+        @Override
+        public void inOrderTraversal(BSTVisitor<FileMetadata> visitor) {
+            Cursor<FileMetadata> cursor = cursor();
+            while (cursor.hasNext()) {
+                FileMetadata file = cursor.next();
+                visitor.visit(cursor.key(), file);
+            }
+        }
+
+        @Override
+        public Cursor<FileMetadata> cursor() {
+            return new MappedCursor();
+        }
+
+        @Override
+        public Cursor<FileMetadata> cursor(String fromKey) {
+            MappedCursor cursor = new MappedCursor();
+            cursor.seek(fromKey);
+            return cursor;
+        }
+
+        /**
+         * Every block starts with a full key, so the first keys of evenly spaced blocks
+         * split the snapshot into ranges of nearly equal size.
+         */
+        @Override
+        public List<String> splitKeys(int parts) {
+            List<String> keys = new ArrayList<>();
+            int ranges = Math.min(parts, header.blockCount);
+            SnapshotCodec.EntryDecoder decoder = new SnapshotCodec.EntryDecoder(buffer, header);
+            for (int i = 1; i < ranges; i++) {
+                decoder.position(header.blockOffset(buffer, (int) ((long) i * header.blockCount / ranges)));
+                decoder.reset();
+                keys.add(decoder.nextKey());
+            }
+            return keys;
+        }
+
+        @Override
+        public int size() {
+            return header.fileCount;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return header.fileCount == 0;
+        }
+
+        /**
+         * Decodes entries lazily. The key of the next entry is always decoded ahead
+         * (for peekKey), the rest of it only when next() is called.
+         */
+        private class MappedCursor implements Cursor<FileMetadata> {
+            private final SnapshotCodec.EntryDecoder decoder = new SnapshotCodec.EntryDecoder(buffer, header);
+            private int nextIndex;     // Index of the entry next() will return
+            private String nextKey;    // Its key, or null at the end
+            private String lastKey;    // Key of the entry returned by the previous next()
+
+            MappedCursor() {
+                positionAtBlock(0);
+            }
+
+            // Positions the cursor at the first entry of a block.
+            private void positionAtBlock(int block) {
+                nextIndex = block * header.blockSize;
+                if (nextIndex >= header.fileCount) {
+                    nextKey = null;
+                    return;
+                }
+                decoder.position(header.blockOffset(buffer, block));
+                decoder.reset();
+                nextKey = decoder.nextKey();
+            }
+
+            // Moves past the rest of the current entry (already consumed or skipped) to the next key.
+            private void advance() {
+                nextIndex++;
+                if (nextIndex >= header.fileCount) {
+                    nextKey = null;
+                    return;
+                }
+                if (nextIndex % header.blockSize == 0) {
+                    decoder.reset(); // Blocks are contiguous; only the front coding restarts
+                }
+                nextKey = decoder.nextKey();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextKey != null;
+            }
+
+            @Override
+            public FileMetadata next() {
+                if (nextKey == null) {
+                    throw new NoSuchElementException();
+                }
+                FileMetadata file = decoder.finish(nextKey);
+                lastKey = nextKey;
+                advance();
+                return file;
+            }
+
+            @Override
+            public String peekKey() {
+                return nextKey;
+            }
+
+            @Override
+            public String key() {
+                return lastKey;
+            }
+
+            @Override
+            public void seek(String key) {
+                if (header.fileCount == 0) {
+                    return;
+                }
+                positionAtBlock(findBlock(decoder, key));
+                while (nextKey != null && nextKey.compareTo(key) < 0) {
+                    decoder.skip();
+                    advance();
+                }
+            }
+        }
+    }
+}
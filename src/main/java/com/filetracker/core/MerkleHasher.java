@@ -0,0 +1,146 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * MerkleHasher
+ * -------------
+ * Computes a Merkle hash for every directory of a snapshot.
+ * A directory's hash is the SHA-256 of its children in key order: the name and content
+ * hash of each file, and the name and (recursive) hash of each subdirectory.
+ * Two directories with the same hash therefore hold exactly the same files,
+ * which lets the DiffEngine skip them without looking inside.
+ * <p>
+ * The computation is a single in-order pass over the tree. All keys under one directory
+ * are contiguous in sorted order, so each directory is opened once, filled, and closed
+ * into its parent, using a stack no deeper than the directory tree.
+ */
+public class MerkleHasher {
+
+    /** Key of the root directory in the returned map. */
+    public static final String ROOT = "";
+
+    private static final char SEPARATOR = File.separatorChar;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private MerkleHasher() {
+    }
+
+    /**
+     * One directory that is still being filled.
+     */
+    private static class Frame {
+        final String path;          // Relative directory path ("" for the root)
+        final MessageDigest digest; // Accumulates the children's entries
+
+        Frame(String path) {
+            this.path = path;
+            this.digest = newDigest();
+        }
+    }
+
+    /**
+     * @param fileTree The snapshot's files.
+     * @return A map from relative directory path ("" for the root) to its hex Merkle hash.
+     */
+    public static Map<String, String> computeDirectoryHashes(OrderedIndex<FileMetadata> fileTree) {
+        Map<String, String> hashes = new HashMap<>();
+        Deque<Frame> open = new ArrayDeque<>();
+        open.push(new Frame(ROOT));
+
+        byte[] hex = new byte[64]; // Reused for every file's hash
+        Cursor<FileMetadata> cursor = fileTree.cursor();
+        while (cursor.hasNext()) {
+            FileMetadata file = cursor.next();
+            String filePath = file.getFilePath();
+            String dir = parentOf(filePath);
+
+            // Close the directories we have walked out of
+            while (!isAncestorOrSelf(open.peek().path, dir)) {
+                close(open, hashes);
+            }
+            // Open the directories between the innermost open one and this file's directory
+            while (!open.peek().path.equals(dir)) {
+                String current = open.peek().path;
+                int start = current.isEmpty() ? 0 : current.length() + 1;
+                int end = dir.indexOf(SEPARATOR, start);
+                open.push(new Frame(end < 0 ? dir : dir.substring(0, end)));
+            }
+
+            byte[] hash = file.getHashBytes();
+            feed(open.peek().digest, 'F', nameOf(filePath),
+                    hash != null ? toHex(hash, hex) : file.getFileHash().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        while (!open.isEmpty()) {
+            close(open, hashes);
+        }
+        return hashes;
+    }
+
+    // Finishes the innermost directory and adds it as an entry of its parent.
+    private static void close(Deque<Frame> open, Map<String, String> hashes) {
+        Frame frame = open.pop();
+        String hash = HexFormat.of().formatHex(frame.digest.digest());
+        hashes.put(frame.path, hash);
+        if (!open.isEmpty()) {
+            feed(open.peek().digest, 'D', nameOf(frame.path), hash.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static void feed(MessageDigest digest, char type, String name, byte[] hexHash) {
+        digest.update((byte) type);
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(hexHash);
+        digest.update((byte) '\n');
+    }
+
+    // The ASCII bytes of the lowercase hex form of 'hash', written into 'out' without building a String.
+    private static byte[] toHex(byte[] hash, byte[] out) {
+        for (int i = 0; i < hash.length; i++) {
+            out[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            out[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return out;
+    }
+
+    /**
+     * @return The directory part of a relative path ("" for files in the root).
+     */
+    public static String parentOf(String relativePath) {
+        int slash = relativePath.lastIndexOf(SEPARATOR);
+        return slash < 0 ? ROOT : relativePath.substring(0, slash);
+    }
+
+    private static String nameOf(String relativePath) {
+        return relativePath.substring(relativePath.lastIndexOf(SEPARATOR) + 1);
+    }
+
+    /**
+     * @return true if 'dir' is 'ancestor' itself or lies somewhere below it.
+     */
+    public static boolean isAncestorOrSelf(String ancestor, String dir) {
+        return ancestor.isEmpty()
+                || dir.equals(ancestor)
+                || (dir.startsWith(ancestor) && dir.charAt(ancestor.length()) == SEPARATOR);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found!", e);
+        }
+    }
+}
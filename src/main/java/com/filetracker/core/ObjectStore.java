@@ -0,0 +1,461 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ObjectStore
+ * ------------
+ * A content-addressed store for file contents, keyed by the SHA-256 hash already kept in
+ * FileMetadata. Each distinct content is stored once, however many files and snapshots
+ * contain it, so keeping a long history of a large tree costs only the bytes that changed.
+ * <p>
+ * Objects live in fan-out directories named after the first two hex digits of the hash
+ * (objects/ab/abcdef...), so no single directory grows huge. An object is copied with
+ * FileChannel.transferTo (the kernel moves the bytes, they never enter the JVM heap) into a
+ * temporary file, then atomically renamed into place, so a crash never leaves a partial object.
+ * <p>
+ * Optionally, large files are split into content-defined chunks (see Chunker). Each chunk is
+ * stored as an object of its own, and the file is stored as a small "recipe" listing its
+ * chunks. When such a file changes a little (e.g. a log or database dump that grows), only
+ * the chunks around the change are new, so a snapshot stores kilobytes instead of the whole file.
+ */
+public class ObjectStore {
+
+    /** Name of the object directory inside the storage directory. */
+    public static final String OBJECTS_DIR = "objects";
+
+    private static final String RECIPE_SUFFIX = ".recipe";
+    private static final int RECIPE_MAGIC = 0x46545243; // "FTRC"
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final int DELTA_MAGIC = 0x46544244;  // "FTBD"
+
+    /** Files smaller than this are always stored whole. */
+    private static final long MIN_DELTA_FILE_SIZE = 16 * 1024;
+
+    /** A delta is only kept if it is smaller than this fraction of the file. */
+    private static final double MAX_DELTA_RATIO = 0.5;
+
+    /** Longest chain of deltas on deltas; the next version is stored whole, so restores stay fast. */
+    private static final int MAX_DELTA_CHAIN = 8;
+
+    private final Path objectsDir;
+    private final AtomicLong storedCount = new AtomicLong();  // Objects written by this instance
+    private final AtomicLong storedBytes = new AtomicLong();  // Bytes written by this instance
+    private volatile Chunker chunker;                         // Splits large files; null stores them whole
+
+    /**
+     * Opens (or creates) an object store.
+     *
+     * @param objectsDir The directory holding the objects.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ObjectStore(Path objectsDir) throws IOException {
+        this.objectsDir = objectsDir;
+        Files.createDirectories(objectsDir);
+    }
+
+    /**
+     * @param hash The SHA-256 hash (hex) of the content.
+     * @return The path the object with this hash is (or would be) stored at.
+     */
+    public Path objectPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path recipePath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash + RECIPE_SUFFIX);
+    }
+
+    private Path deltaPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash + DELTA_SUFFIX);
+    }
+
+    /**
+     * @param hash The SHA-256 hash (hex) of the content.
+     * @return true if the store holds this content (whole, as chunks or as a delta).
+     */
+    public boolean contains(String hash) {
+        return Files.exists(objectPath(hash)) || Files.exists(recipePath(hash)) || Files.exists(deltaPath(hash));
+    }
+
+    /**
+     * Enables or disables chunked storage. With a chunker, files larger than its maximum
+     * chunk size are stored as chunks; smaller files are always stored whole.
+     *
+     * @param chunker The chunker to use, or null to store every file whole.
+     */
+    public void setChunker(Chunker chunker) {
+        this.chunker = chunker;
+    }
+
+    public Chunker getChunker() {
+        return chunker;
+    }
+
+    /**
+     * Stores the content of a scanned file, unless the store already holds it.
+     * The file is checked again after copying: if its size or modification time no longer
+     * match the metadata, it changed after it was hashed and the copy is discarded.
+     *
+     * @param file The metadata of the file (its absolute path and hash).
+     * @return true if the content is in the store afterwards.
+     * @throws IOException If the object cannot be written.
+     */
+    public boolean store(FileMetadata file) throws IOException {
+        return store(file, null);
+    }
+
+    /**
+     * Stores the content of a scanned file whose previous version is known. If the previous
+     * version is in the store, the new content may be stored as a block delta against it
+     * (see BlockDelta), which makes a small edit to a large file cost about the size of the edit.
+     *
+     * @param file     The metadata of the file (its absolute path and hash).
+     * @param previous The file's previous version, or null if there is none.
+     * @return true if the content is in the store afterwards.
+     * @throws IOException If the object cannot be written.
+     */
+    public boolean store(FileMetadata file, FileMetadata previous) throws IOException {
+        String hash = file.getFileHash(); // Formatted once, for the object paths
+        Path target = objectPath(hash);
+        if (contains(hash)) {
+            return true; // Deduplicated
+        }
+
+        Path source = Paths.get(file.getAbsolutePath());
+        Chunker currentChunker = chunker;
+        if (currentChunker != null && file.getFileSize() > currentChunker.getMaxSize()) {
+            return storeChunked(file, hash, source, currentChunker);
+        }
+        if (previous != null && !previous.hasSameContent(file)
+                && file.getFileSize() >= MIN_DELTA_FILE_SIZE && file.getFileSize() <= Integer.MAX_VALUE) {
+            Boolean stored = storeDelta(file, hash, source, previous.getFileHash());
+            if (stored != null) {
+                return stored;
+            }
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), hash.substring(0, 8), ".tmp");
+        try {
+            long copied;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                copied = transferAll(in, out);
+            }
+
+            BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+            if (copied != file.getFileSize() || attrs.size() != file.getFileSize()
+                    || attrs.lastModifiedTime().toMillis() != file.getLastModified()) {
+                System.err.println("  Not stored (changed while snapshotting): " + file.getFilePath());
+                return false;
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.exists(target)) { // Otherwise another writer stored the same content first
+                    throw e;
+                }
+            }
+            storedCount.incrementAndGet();
+            storedBytes.addAndGet(copied);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores a file as chunks plus a recipe. The whole-file hash is computed from the same
+     * bytes, so a file that changed after it was hashed is detected exactly and not stored.
+     */
+    private boolean storeChunked(FileMetadata file, String hash, Path source, Chunker chunker) throws IOException {
+        MessageDigest wholeDigest = FileHasher.newDigest();
+        MessageDigest chunkDigest = FileHasher.newDigest();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        long[] counts = new long[3]; // chunks, new objects, new bytes
+
+        try (SnapshotCodec.BinaryWriter recipeEntries = new SnapshotCodec.BinaryWriter(entries);
+             FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            chunker.split(in, (data, offset, length) -> {
+                wholeDigest.update(data, offset, length);
+                chunkDigest.update(data, offset, length);
+                byte[] chunkHash = chunkDigest.digest();
+                if (writeObject(HexFormat.of().formatHex(chunkHash), ByteBuffer.wrap(data, offset, length))) {
+                    counts[1]++;
+                    counts[2] += length;
+                }
+                recipeEntries.writeVarLong(length);
+                recipeEntries.write(chunkHash);
+                counts[0]++;
+            });
+        }
+
+        if (!HexFormat.of().formatHex(wholeDigest.digest()).equals(hash)) {
+            System.err.println("  Not stored (changed while snapshotting): " + file.getFilePath());
+            return false;
+        }
+
+        ByteArrayOutputStream recipe = new ByteArrayOutputStream();
+        try (SnapshotCodec.BinaryWriter out = new SnapshotCodec.BinaryWriter(recipe)) {
+            out.writeInt(RECIPE_MAGIC);
+            out.writeVarLong(counts[0]);
+            entries.writeTo(out);
+        }
+        Path recipeFile = recipePath(hash);
+        writeAtomically(recipeFile, ByteBuffer.wrap(recipe.toByteArray()));
+
+        storedCount.addAndGet(counts[1]);
+        storedBytes.addAndGet(counts[2]);
+        return true;
+    }
+
+    /**
+     * Tries to store a file as a block delta against its previous version.
+     *
+     * @return true if stored, false if the file changed after it was hashed,
+     *         or null if a delta is not possible or not worth it (the caller stores the file whole).
+     */
+    private Boolean storeDelta(FileMetadata file, String hash, Path source, String baseHash) throws IOException {
+        int baseDepth = deltaDepth(baseHash);
+        if (baseDepth < 0 || baseDepth >= MAX_DELTA_CHAIN) {
+            return null;
+        }
+
+        Path temp = null;
+        try {
+            Path baseObject = objectPath(baseHash);
+            if (baseDepth > 0) {
+                temp = Files.createTempFile(objectsDir, ".base", ".tmp");
+                copyTo(baseHash, temp);
+                baseObject = temp;
+            }
+            ByteBuffer base = SnapshotCodec.mapReadOnly(baseObject);
+            ByteBuffer target = SnapshotCodec.mapReadOnly(source);
+
+            // The delta is only trusted if the bytes it was computed from have the recorded hash
+            MessageDigest digest = FileHasher.newDigest();
+            digest.update(target.duplicate());
+            if (!HexFormat.of().formatHex(digest.digest()).equals(hash)) {
+                System.err.println("  Not stored (changed while snapshotting): " + file.getFilePath());
+                return false;
+            }
+
+            int blockSize = BlockDelta.blockSizeFor(base.limit());
+            byte[] ops = BlockDelta.encode(base, target, blockSize, (int) (target.limit() * MAX_DELTA_RATIO));
+            if (ops == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream delta = new ByteArrayOutputStream(ops.length + 64);
+            try (SnapshotCodec.BinaryWriter out = new SnapshotCodec.BinaryWriter(delta)) {
+                out.writeInt(DELTA_MAGIC);
+                out.write(SnapshotCodec.hashToBytes(baseHash));
+                out.writeVarLong(baseDepth + 1);
+                out.writeVarLong(blockSize);
+                out.write(ops);
+            }
+            writeAtomically(deltaPath(hash), ByteBuffer.wrap(delta.toByteArray()));
+            storedCount.incrementAndGet();
+            storedBytes.addAndGet(delta.size());
+            return true;
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * @return 0 if the content is stored whole, the chain length if it is stored as a delta,
+     *         or -1 if it is missing or chunked (not usable as a delta base).
+     */
+    private int deltaDepth(String hash) throws IOException {
+        if (Files.exists(objectPath(hash))) {
+            return 0;
+        }
+        Path delta = deltaPath(hash);
+        if (!Files.exists(delta)) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(64);
+        try (FileChannel in = FileChannel.open(delta, StandardOpenOption.READ)) {
+            in.read(header);
+        }
+        header.flip();
+        return DeltaHeader.read(header, delta).depth;
+    }
+
+    /**
+     * The header of a delta object: magic, base hash, chain depth, block size. The ops follow it.
+     */
+    private static class DeltaHeader {
+        String baseHash;
+        int depth;
+        int blockSize;
+
+        static DeltaHeader read(ByteBuffer in, Path file) throws IOException {
+            try {
+                if (in.getInt() != DELTA_MAGIC) {
+                    throw new IOException("Error: '" + file + "' is not a delta object.");
+                }
+                DeltaHeader header = new DeltaHeader();
+                byte[] baseHash = new byte[SnapshotCodec.HASH_BYTES];
+                in.get(baseHash);
+                header.baseHash = HexFormat.of().formatHex(baseHash);
+                header.depth = (int) SnapshotCodec.readVarLong(in);
+                header.blockSize = (int) SnapshotCodec.readVarLong(in);
+                return header;
+            } catch (RuntimeException e) {
+                throw new IOException("Error: Delta object '" + file + "' is truncated or corrupt.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes an object unless it already exists.
+     *
+     * @return true if the object was written, false if the store already had it.
+     */
+    private boolean writeObject(String hash, ByteBuffer content) throws IOException {
+        Path target = objectPath(hash);
+        if (Files.exists(target)) {
+            return false;
+        }
+        writeAtomically(target, content);
+        return true;
+    }
+
+    private void writeAtomically(Path target, ByteBuffer content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString().substring(0, 8), ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    out.write(content);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.exists(target)) { // Otherwise another writer stored the same content first
+                    throw e;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies an object out of the store.
+     *
+     * @param hash        The SHA-256 hash (hex) of the content.
+     * @param destination The file to write (replaced if it exists).
+     * @throws IOException If the object is missing or the destination cannot be written.
+     */
+    public void copyTo(String hash, Path destination) throws IOException {
+        Path object = objectPath(hash);
+        Path recipe = recipePath(hash);
+        Path delta = deltaPath(hash);
+        boolean whole = Files.exists(object);
+        boolean chunked = !whole && Files.exists(recipe);
+        if (!whole && !chunked && !Files.exists(delta)) {
+            throw new IOException("Error: Content " + hash + " is not in the object store.");
+        }
+        try (FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (whole) {
+                try (FileChannel in = FileChannel.open(object, StandardOpenOption.READ)) {
+                    transferAll(in, out);
+                }
+            } else if (chunked) {
+                copyChunks(recipe, out);
+            } else {
+                copyDelta(delta, out);
+            }
+        }
+    }
+
+    // Appends the chunks of a recipe in order.
+    private void copyChunks(Path recipe, FileChannel out) throws IOException {
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(recipe));
+        if (entries.getInt() != RECIPE_MAGIC) {
+            throw new IOException("Error: '" + recipe + "' is not a chunk recipe.");
+        }
+        long count = SnapshotCodec.readVarLong(entries);
+        byte[] chunkHash = new byte[SnapshotCodec.HASH_BYTES];
+        for (long i = 0; i < count; i++) {
+            SnapshotCodec.readVarLong(entries); // Chunk length (the chunk file knows it too)
+            entries.get(chunkHash);
+            try (FileChannel in = FileChannel.open(objectPath(HexFormat.of().formatHex(chunkHash)), StandardOpenOption.READ)) {
+                transferAll(in, out);
+            }
+        }
+    }
+
+    // Rebuilds delta-encoded content from its base, which is materialized first (inside the store,
+    // never in the restore target) unless it is stored whole.
+    private void copyDelta(Path deltaFile, FileChannel out) throws IOException {
+        ByteBuffer delta = ByteBuffer.wrap(Files.readAllBytes(deltaFile));
+        DeltaHeader header = DeltaHeader.read(delta, deltaFile);
+        Path baseObject = objectPath(header.baseHash);
+        Path temp = null;
+        try {
+            if (!Files.exists(baseObject)) {
+                temp = Files.createTempFile(objectsDir, ".base", ".tmp");
+                copyTo(header.baseHash, temp);
+                baseObject = temp;
+            }
+            try (FileChannel base = FileChannel.open(baseObject, StandardOpenOption.READ)) {
+                BlockDelta.apply(base, header.blockSize, delta, out);
+            }
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // transferTo may move fewer bytes than asked for, so loop until the end of the file.
+    static long transferAll(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+            long transferred = in.transferTo(position, size - position, out);
+            if (transferred <= 0) {
+                break; // The file shrank while copying
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    /**
+     * @return The number of new objects written by this store since it was opened.
+     */
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    /**
+     * @return The number of bytes written by this store since it was opened.
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+}
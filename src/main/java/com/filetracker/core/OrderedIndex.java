@@ -0,0 +1,58 @@
+package com.filetracker.core;
+
+import java.util.List;
+
+/**
+ * OrderedIndex
+ * -------------
+ * Read access to a set of values sorted by key (file path).
+ * The in-memory BST is one implementation; a snapshot stored on disk can be read
+ * through another one (see MappedSnapshot) without building a tree first.
+ *
+ * @param <V> the type of value stored in the index (FileMetadata).
+ */
+public interface OrderedIndex<V> {
+
+    /**
+     * @param key The key to look up.
+     * @return The value stored under 'key', or null if there is none.
+     */
+    V search(String key);
+
+    /**
+     * Visits every entry in ascending key order.
+     *
+     * @param visitor Called once per entry.
+     */
+    void inOrderTraversal(BSTVisitor<V> visitor);
+
+    /**
+     * @return A cursor positioned before the smallest key.
+     */
+    Cursor<V> cursor();
+
+    /**
+     * @param fromKey The key to start at.
+     * @return A cursor positioned before the first key greater than or equal to 'fromKey'.
+     */
+    Cursor<V> cursor(String fromKey);
+
+    /**
+     * Picks keys that cut the index into about 'parts' ranges of similar size, without
+     * visiting every entry. Used to split work (e.g. a parallel diff) by key range.
+     *
+     * @param parts The number of ranges wanted.
+     * @return At most parts - 1 keys of the index, in ascending order.
+     */
+    List<String> splitKeys(int parts);
+
+    /**
+     * @return The number of entries.
+     */
+    int size();
+
+    /**
+     * @return true if the index has no entries.
+     */
+    boolean isEmpty();
+}
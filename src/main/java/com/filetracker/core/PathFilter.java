@@ -0,0 +1,123 @@
+package com.filetracker.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PathFilter
+ * -----------
+ * A Bloom filter over the relative paths of a snapshot. It answers "is this path in the
+ * snapshot?" with either "definitely not" or "maybe": a "no" is always right, and about 1%
+ * of the paths that are not in the snapshot get a "maybe" (10 bits per path, 7 probes).
+ * Most lookups during scans and restores are for paths that are not there, and those
+ * are answered from a few bytes per file, without touching the file tree.
+ * <p>
+ * The probes are derived from one 64-bit hash of the path by double hashing
+ * (probe i = h1 + i * h2). The bits live in a ByteBuffer, so a filter stored in a
+ * snapshot file (see SnapshotCodec) is read straight from the mapped file, without a copy.
+ */
+public class PathFilter {
+
+    /** Filter size per path. 10 bits with 7 probes gives about 1% false positives. */
+    public static final int BITS_PER_PATH = 10;
+
+    private static final int PROBES = 7;
+
+    private final ByteBuffer words; // The bit array, as 64-bit words
+    private final int offset;       // Position of the first word in 'words'
+    private final long bitCount;
+    private final int probes;
+
+    private PathFilter(ByteBuffer words, int offset, int wordCount, int probes) {
+        this.words = words;
+        this.offset = offset;
+        this.bitCount = (long) wordCount * 64;
+        this.probes = probes;
+    }
+
+    /**
+     * Builds a filter over every key of an index.
+     *
+     * @param index The index whose keys to add.
+     * @return The filter.
+     */
+    public static PathFilter build(OrderedIndex<?> index) {
+        int wordCount = (int) Math.max(1, ((long) index.size() * BITS_PER_PATH + 63) / 64);
+        PathFilter filter = new PathFilter(ByteBuffer.allocate(wordCount * 8), 0, wordCount, PROBES);
+        Cursor<?> cursor = index.cursor();
+        while (cursor.hasNext()) {
+            cursor.next();
+            filter.add(cursor.key());
+        }
+        return filter;
+    }
+
+    /**
+     * @param path A relative path.
+     * @return false if the path is definitely not in the filter; true if it may be.
+     */
+    public boolean mightContain(String path) {
+        long h1 = mix(HashCache.hash64(path));
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < probes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.getLong(offset + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(String path) {
+        long h1 = mix(HashCache.hash64(path));
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < probes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int position = offset + (int) (bit >>> 6) * 8;
+            words.putLong(position, words.getLong(position) | (1L << bit));
+        }
+    }
+
+    /**
+     * @return The size of the bit array in bytes.
+     */
+    public int sizeInBytes() {
+        return (int) (bitCount / 8);
+    }
+
+    /**
+     * Writes the filter: probe count, word count, then the words.
+     */
+    void write(SnapshotCodec.BinaryWriter out) throws IOException {
+        out.writeVarLong(probes);
+        out.writeVarLong(bitCount / 64);
+        for (long i = 0; i < bitCount / 64; i++) {
+            out.writeLong(words.getLong(offset + (int) i * 8));
+        }
+    }
+
+    /**
+     * Reads a filter written by write(), keeping its bits in the given buffer (not copied).
+     *
+     * @param buffer   The buffer holding the filter.
+     * @param position Where the filter starts.
+     * @return The filter.
+     */
+    static PathFilter read(ByteBuffer buffer, int position) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(position);
+        int probes = (int) SnapshotCodec.readVarLong(in);
+        int wordCount = (int) SnapshotCodec.readVarLong(in);
+        if (probes < 1 || wordCount < 1 || in.remaining() < wordCount * 8L) {
+            throw new IllegalArgumentException("Invalid path filter");
+        }
+        return new PathFilter(buffer.duplicate(), in.position(), wordCount, probes);
+    }
+
+    // SplitMix64 finalizer: spreads the bits of the FNV path hash.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
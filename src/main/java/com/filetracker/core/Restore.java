@@ -5,9 +5,14 @@ import com.filetracker.models.Snapshot;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Restore
@@ -17,10 +22,44 @@ import java.util.List;
  * Algorithm:
  * 1. Identify files to delete (files present now but not in the snapshot).
  * 2. Identify files to copy (files present in the snapshot).
- * 3. Perform the deletion and copying.
+ *    Both come from sorted merges of the target directory and the snapshot.
+ * 3. Perform the deletion and copying. Files that already match the snapshot (same size
+ *    and mtime, or same content hash) are not copied, so only changed paths are written.
+ * The deletions and copies are handed to a RestoreExecutor as they are planned and
+ * carried out in parallel.
+ * File contents come from the object store, which holds them as they were when the
+ * snapshot was taken. Without a store, a file is copied from its original location if that
+ * still has the snapshot's content; otherwise it is reported as not restorable.
  */
 public class Restore {
 
+    private final ObjectStore objectStore; // Source of historical file contents (may be null)
+    private final int workerCount;         // Parallel file operations (see RestoreExecutor)
+
+    /**
+     * Creates a restore engine without an object store: files are copied from the
+     * absolute paths recorded in the snapshot, i.e. with their current content.
+     */
+    public Restore() {
+        this(null);
+    }
+
+    /**
+     * @param objectStore The store holding the snapshotted file contents (may be null).
+     */
+    public Restore(ObjectStore objectStore) {
+        this(objectStore, RestoreExecutor.DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param objectStore The store holding the snapshotted file contents (may be null).
+     * @param workerCount The number of parallel file operations (1 or less restores on the calling thread).
+     */
+    public Restore(ObjectStore objectStore, int workerCount) {
+        this.objectStore = objectStore;
+        this.workerCount = workerCount;
+    }
+
     /**
      * Restores the target directory to the state stored in the given snapshot.
      *
@@ -29,7 +68,22 @@ public class Restore {
      * @throws IOException If an I/O error occurs during file operations.
      */
     public void restoreSnapshot(String targetDirectory, Snapshot snapshot) throws IOException {
+        restoreSnapshot(targetDirectory, snapshot, "");
+    }
+
+    /**
+     * Restores only the files under one directory of the snapshot (e.g. "src"),
+     * leaving the rest of the target directory untouched.
+     * The snapshot tree is scanned with a cursor that seeks straight to the directory.
+     *
+     * @param targetDirectory The path of the directory to restore.
+     * @param snapshot        The snapshot to restore to.
+     * @param directory       The relative directory to restore; null or "" restores everything.
+     * @throws IOException If an I/O error occurs during file operations.
+     */
+    public void restoreSnapshot(String targetDirectory, Snapshot snapshot, String directory) throws IOException {
         Path targetPath = Paths.get(targetDirectory);
+        String prefix = FileUtils.directoryPrefix(directory);
 
         // Validate target directory
         if (!Files.exists(targetPath) || !Files.isDirectory(targetPath)) {
@@ -38,67 +92,172 @@ public class Restore {
 
         System.out.println("Preparing to restore directory to Snapshot #" + snapshot.getSnapshotId() + "...");
 
-        // **Algorithm Step 1: Plan Deletions**
-        // Get a list of all files CURRENTLY in the target directory.
-        // We will later delete any file that is not in the snapshot.
-        List<Path> currentFiles = new ArrayList<>();
-        Files.walkFileTree(targetPath, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (attrs.isRegularFile()) {
-                    currentFiles.add(file);
+        // **Algorithm Steps 1 & 2: Plan Deletions and Copies**
+        // The target is walked in key order (see SortedFileWalker) and merged with the snapshot's
+        // sorted cursor, like a diff: a file only in the target is deleted, a file only in the
+        // snapshot is copied, and a file in both is copied unless its size and mtime match.
+        // Each planned operation goes straight to the executor, so nothing is kept per file.
+        // Only the restored directory is walked, so files outside it are never deleted.
+        long failed;
+        try (RestoreExecutor executor = new RestoreExecutor(objectStore, targetPath, workerCount)) {
+            // First merge: files in both are restored now; for the others only their sizes are noted
+            Set<Long> deletedSizes = new HashSet<>();
+            Set<Long> missingSizes = new HashSet<>();
+            int[] upToDate = new int[1];
+            merge(targetPath, snapshot, prefix, (targetFile, snapshotFile) -> {
+                if (snapshotFile == null) {
+                    deletedSizes.add(targetFile.getAttributes().size());
+                } else if (targetFile == null) {
+                    missingSizes.add(snapshotFile.getFileSize());
+                } else if (targetFile.getAttributes().size() == snapshotFile.getFileSize()
+                        && targetFile.getAttributes().lastModifiedTime().toMillis() == snapshotFile.getLastModified()) {
+                    upToDate[0]++;
+                } else {
+                    executor.restore(snapshotFile, targetFile.getAttributes()); // The executor hashes same-size files
+                }
+            });
+
+            if (!deletedSizes.isEmpty() || !missingSizes.isEmpty()) {
+                // A file to delete may be a renamed copy of a missing one: only the same size can match
+                Set<Long> moveSizes = new HashSet<>(deletedSizes);
+                moveSizes.retainAll(missingSizes);
+                moveSizes.remove(0L);
+
+                // Second merge: deletions and missing files, holding back the possible moves
+                List<Path> heldDeletions = new ArrayList<>();
+                Map<Long, List<FileMetadata>> heldCopies = new HashMap<>();
+                List<FileMetadata> blocked = new ArrayList<>(); // Missing files whose directory is still a file
+                merge(targetPath, snapshot, prefix, (targetFile, snapshotFile) -> {
+                    if (snapshotFile == null) {
+                        if (moveSizes.contains(targetFile.getAttributes().size())) {
+                            heldDeletions.add(targetFile.getPath());
+                        } else {
+                            executor.delete(targetFile.getPath());
+                        }
+                    } else if (targetFile == null) {
+                        if (moveSizes.contains(snapshotFile.getFileSize())) {
+                            heldCopies.computeIfAbsent(snapshotFile.getFileSize(), size -> new ArrayList<>()).add(snapshotFile);
+                        } else {
+                            restoreMissing(executor, snapshotFile, blocked);
+                        }
+                    }
+                    // Files in both were handled by the first merge (or were just restored into a new directory)
+                });
+
+                // **Algorithm Step 2b: Reuse Moved Files**
+                // Moving a file costs a rename instead of a delete plus a full copy.
+                reuseMovedFiles(targetPath, heldCopies, heldDeletions);
+                for (Path file : heldDeletions) {
+                    executor.delete(file);
+                }
+                for (List<FileMetadata> files : heldCopies.values()) {
+                    for (FileMetadata fileMeta : files) {
+                        restoreMissing(executor, fileMeta, blocked);
+                    }
+                }
+                if (!blocked.isEmpty()) {
+                    executor.awaitIdle(); // The files standing in the way are deleted now
+                    for (FileMetadata fileMeta : blocked) {
+                        try {
+                            executor.restore(fileMeta, null);
+                        } catch (IOException e) {
+                            System.err.println("  Failed to copy: " + fileMeta.getFilePath() + " - " + e.getMessage());
+                        }
+                    }
                 }
-                return FileVisitResult.CONTINUE;
             }
-        });
-
-        // **Algorithm Step 2: Plan Copies & Identify Deletions**
-        // We need to know which files from the current directory to keep.
-        // We will use the snapshot's BST to check each current file.
-        List<Path> filesToDelete = new ArrayList<>();
-        BST<FileMetadata> snapshotTree = snapshot.getFileTree();
-
-        for (Path currentFile : currentFiles) {
-            // Get the relative path of the current file compared to the target directory
-            // This is the key used in the snapshot BST
-            String relativePath = targetPath.relativize(currentFile).toString();
-
-            // If the snapshot does NOT contain this relative path, mark it for deletion
-            if (snapshotTree.search(relativePath) == null) {
-                filesToDelete.add(currentFile);
+
+            executor.awaitIdle();
+            if (upToDate[0] > 0) {
+                System.out.println("  " + upToDate[0] + " file(s) already up to date.");
             }
+            System.out.println("  " + executor.getProgress());
+            failed = executor.getProgress().getFailedCount();
         }
 
-        // **Algorithm Step 3: Execute Deletions**
-        System.out.println("Removing files not present in snapshot...");
-        for (Path fileToDelete : filesToDelete) {
-            try {
-                Files.deleteIfExists(fileToDelete);
-                System.out.println("  DELETED: " + targetPath.relativize(fileToDelete));
-            } catch (IOException e) {
-                System.err.println("  Failed to delete: " + fileToDelete + " - " + e.getMessage());
+        if (failed > 0) {
+            System.out.println("Restore to Snapshot #" + snapshot.getSnapshotId() + " completed, but " + failed
+                    + " file(s) could not be restored.");
+        } else {
+            System.out.println("Restore to Snapshot #" + snapshot.getSnapshotId() + " completed successfully.");
+        }
+    }
+
+    /**
+     * One step of a merge: the target file, the snapshot file, or both when their paths match.
+     */
+    @FunctionalInterface
+    private interface MergeStep {
+        void accept(SortedFileWalker.Entry targetFile, FileMetadata snapshotFile) throws IOException;
+    }
+
+    // Walks the target and the snapshot's files under 'prefix' side by side, in key order.
+    private static void merge(Path targetPath, Snapshot snapshot, String prefix, MergeStep step) throws IOException {
+        Path walkRoot = prefix.isEmpty() ? targetPath : targetPath.resolve(prefix);
+        SortedFileWalker walker = new SortedFileWalker(walkRoot, targetPath);
+        Cursor<FileMetadata> cursor = snapshot.getFileTree().cursor(prefix);
+        while (true) {
+            String targetKey = walker.peekKey();
+            String snapshotKey = cursor.hasNext() && cursor.peekKey().startsWith(prefix) ? cursor.peekKey() : null;
+            if (targetKey == null && snapshotKey == null) {
+                return;
+            }
+            int comp = targetKey == null ? 1 : snapshotKey == null ? -1 : targetKey.compareTo(snapshotKey);
+            if (comp < 0) {
+                step.accept(walker.next(), null);         // Not in the snapshot
+            } else if (comp > 0) {
+                step.accept(null, cursor.next());         // Missing from the target
+            } else {
+                step.accept(walker.next(), cursor.next());
             }
         }
+    }
+
+    /**
+     * Restores a file that is missing from the target. Its directory may not be creatable yet
+     * because a file with the directory's name is still waiting to be deleted; such files are
+     * added to 'blocked' and restored once the deletions are done.
+     */
+    private static void restoreMissing(RestoreExecutor executor, FileMetadata fileMeta, List<FileMetadata> blocked) {
+        try {
+            executor.restore(fileMeta, null);
+        } catch (IOException e) {
+            blocked.add(fileMeta);
+        }
+    }
 
-        // **Algorithm Step 4: Execute Copy/Overwrite**
-        // Traverse the snapshot's BST and copy every file to the target directory.
-        System.out.println("Copying files from snapshot...");
-        snapshotTree.inOrderTraversal((filePath, fileMeta) -> {
+    /**
+     * Moves files marked for deletion to snapshot paths that are missing in the target and
+     * need exactly their content. Both sides only hold files of sizes found on the other side.
+     * Moved files are removed from 'filesToDelete' and from 'missingBySize'.
+     */
+    private void reuseMovedFiles(Path targetPath, Map<Long, List<FileMetadata>> missingBySize, List<Path> filesToDelete) {
+        for (Iterator<Path> it = filesToDelete.iterator(); it.hasNext(); ) {
+            Path file = it.next();
             try {
-                // Use the ABSOLUTE path stored in the metadata to find the source file
-                Path sourceFilePath = Paths.get(fileMeta.getAbsolutePath());
-                Path destinationFilePath = targetPath.resolve(filePath); // Build the path in the target directory
-
-                // Create parent directories if they don't exist
-                Files.createDirectories(destinationFilePath.getParent());
-                // Copy the file, overwriting if it already exists
-                Files.copy(sourceFilePath, destinationFilePath, StandardCopyOption.REPLACE_EXISTING);
-                System.out.println("  COPIED: " + filePath);
+                long size = Files.size(file);
+                List<FileMetadata> candidates = missingBySize.get(size);
+                if (candidates == null || candidates.isEmpty()) {
+                    continue;
+                }
+                String hash = FileHasher.hash(file, size);
+                for (Iterator<FileMetadata> candidateIt = candidates.iterator(); candidateIt.hasNext(); ) {
+                    FileMetadata candidate = candidateIt.next();
+                    if (candidate.getFileHash().equals(hash)) {
+                        Path destination = targetPath.resolve(candidate.getFilePath());
+                        Files.createDirectories(destination.getParent());
+                        Files.move(file, destination);
+                        Files.setLastModifiedTime(destination, FileTime.fromMillis(candidate.getLastModified()));
+                        candidateIt.remove();
+                        it.remove();
+                        System.out.println("  MOVED: " + targetPath.relativize(file) + " -> " + candidate.getFilePath());
+                        break;
+                    }
+                }
             } catch (IOException e) {
-                System.err.println("  Failed to copy: " + filePath + " - " + e.getMessage());
+                // Leave the file to the normal delete/copy steps
+                System.err.println("  Could not reuse: " + file + " - " + e.getMessage());
             }
-        });
-
-        System.out.println("Restore to Snapshot #" + snapshot.getSnapshotId() + " completed successfully.");
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,324 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RestoreExecutor
+ * ----------------
+ * Carries out the file operations of a restore (see Restore) on a bounded pool of workers.
+ * Restoring many small files is dominated by per-file latency (open, create, close), so
+ * several files are kept in flight at once. The restore hands over each deletion and copy
+ * as soon as it has planned it; missing parent directories are created on the calling
+ * thread (in path order, so each one once), and the files are copied by the workers.
+ * Copies use FileChannel.transferTo, so the kernel moves the bytes (copy_file_range or
+ * sendfile where available) without them passing through the JVM heap.
+ * <p>
+ * At most a few dozen operations per worker wait in the queue. When it is full, the calling
+ * thread runs the next operation itself, so planning never gets far ahead of the workers and
+ * memory does not grow with the number of files. A Progress counter tracks files and bytes
+ * done, and the calling thread prints it every few seconds on long restores.
+ */
+public class RestoreExecutor implements AutoCloseable {
+
+    /**
+     * Default number of restore workers. Restores wait on I/O more than on the CPU, so this is
+     * higher than the core count. Can be overridden with the system property "filetracker.restore.workers".
+     */
+    public static final int DEFAULT_WORKERS =
+            Integer.getInteger("filetracker.restore.workers", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // Operations waiting for a worker, per worker
+    private static final int QUEUED_PER_WORKER = 64;
+
+    // How often the calling thread reports progress on long restores.
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ObjectStore objectStore;    // Source of historical file contents (may be null)
+    private final Path targetPath;            // The restored directory
+    private final ThreadPoolExecutor workers; // null when everything runs on the calling thread
+    private final Progress progress = new Progress();
+    private final Object lock = new Object();
+    private long pending;                     // Operations handed to the workers and not finished (guarded by lock)
+    private Path lastDirectory;               // Parent directory of the last missing file restored
+    private long lastReport = System.nanoTime();
+
+    /**
+     * @param objectStore The store holding the snapshotted file contents (may be null).
+     * @param targetPath  The restored directory.
+     * @param workerCount The number of workers (1 or less runs on the calling thread).
+     */
+    public RestoreExecutor(ObjectStore objectStore, Path targetPath, int workerCount) {
+        this.objectStore = objectStore;
+        this.targetPath = targetPath;
+        this.workers = workerCount <= 1 ? null : new ThreadPoolExecutor(workerCount, workerCount,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workerCount * QUEUED_PER_WORKER),
+                restoreWorkerFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * @return The counters of this executor's work so far.
+     */
+    public Progress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Deletes a file. A file that cannot be deleted is reported and counted as failed.
+     *
+     * @param file The file to delete.
+     */
+    public void delete(Path file) {
+        submit(() -> {
+            try {
+                Files.deleteIfExists(file);
+                progress.fileDone(0);
+                System.out.println("  DELETED: " + targetPath.relativize(file));
+            } catch (IOException e) {
+                progress.fileFailed();
+                System.err.println("  Failed to delete: " + file + " - " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Restores a file. It is first compared with what is in the target (see isUpToDate) and
+     * only copied if it differs. If the file is missing, its parent directory is created first,
+     * on the calling thread.
+     *
+     * @param fileMeta          The snapshot file to restore.
+     * @param currentAttributes The attributes of the file now in the target, or null if it is missing.
+     * @throws IOException If the parent directory cannot be created (the file is not restored then).
+     */
+    public void restore(FileMetadata fileMeta, BasicFileAttributes currentAttributes) throws IOException {
+        String filePath = fileMeta.getFilePath();
+        Path destination = targetPath.resolve(filePath);
+        Path parent = destination.getParent();
+        if (currentAttributes == null && parent != null && !parent.equals(lastDirectory)) {
+            Files.createDirectories(parent);
+            lastDirectory = parent;
+        }
+        submit(() -> {
+            try {
+                if (isUpToDate(destination, currentAttributes, fileMeta)) {
+                    progress.fileSkipped();
+                    return;
+                }
+                if (!copy(fileMeta, destination)) {
+                    progress.fileFailed();
+                    System.err.println("  Not restorable (content not stored, and the original has changed): " + filePath);
+                    return;
+                }
+                // Keep the snapshot's mtime, so the next restore or snapshot can tell the file is unchanged.
+                // Only done here, where the snapshot's content was written: otherwise the next snapshot
+                // would take the file as unchanged and record the old hash for other content.
+                Files.setLastModifiedTime(destination, FileTime.fromMillis(fileMeta.getLastModified()));
+                progress.fileDone(fileMeta.getFileSize());
+                System.out.println("  COPIED: " + filePath);
+            } catch (IOException e) {
+                progress.fileFailed();
+                System.err.println("  Failed to copy: " + filePath + " - " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits until every operation handed over so far is finished.
+     *
+     * @throws IOException If the restore is interrupted.
+     */
+    public void awaitIdle() throws IOException {
+        try {
+            synchronized (lock) {
+                while (pending > 0) {
+                    lock.wait(TimeUnit.NANOSECONDS.toMillis(PROGRESS_INTERVAL_NANOS));
+                    reportProgress();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Restore interrupted.");
+        }
+    }
+
+    /**
+     * Stops the workers. Operations that have not started yet are dropped, so call awaitIdle() first.
+     */
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the snapshot's content of a file to the destination. It comes from the object store;
+     * without one (or if the content is missing from it), the original file is used, but only if
+     * it still has the snapshot's content.
+     *
+     * @return false if the snapshot's content is not available (nothing was written).
+     */
+    private boolean copy(FileMetadata fileMeta, Path destination) throws IOException {
+        if (objectStore != null && objectStore.contains(fileMeta.getFileHash())) {
+            // The content as it was when the snapshot was taken
+            objectStore.copyTo(fileMeta.getFileHash(), destination);
+            return true;
+        }
+        // Use the ABSOLUTE path stored in the metadata to find the source file
+        Path source = Paths.get(fileMeta.getAbsolutePath());
+        if (source.toAbsolutePath().normalize().equals(destination.toAbsolutePath().normalize())
+                || !Files.isRegularFile(source)
+                || !FileHasher.hash(source, Files.size(source)).equals(fileMeta.getFileHash())) {
+            return false; // Restoring in place (and the file differs), or the original is gone or changed
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ObjectStore.transferAll(in, out);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the file in the target already has the snapshot's content.
+     * Same size and mtime is taken as a match without reading the file (like the
+     * snapshot scan does); with the same size but another mtime, the file is hashed.
+     * A hash match also gets the snapshot's mtime back, so the next check is cheap.
+     *
+     * @param file     The file in the target directory.
+     * @param attrs    Its attributes from the walk, or null if it does not exist.
+     * @param fileMeta The file as recorded in the snapshot.
+     * @return true if the file does not need to be copied.
+     */
+    private static boolean isUpToDate(Path file, BasicFileAttributes attrs, FileMetadata fileMeta) throws IOException {
+        if (attrs == null || attrs.size() != fileMeta.getFileSize()) {
+            return false;
+        }
+        if (attrs.lastModifiedTime().toMillis() == fileMeta.getLastModified()) {
+            return true;
+        }
+        if (!FileHasher.hash(file, attrs.size()).equals(fileMeta.getFileHash())) {
+            return false;
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(fileMeta.getLastModified()));
+        return true;
+    }
+
+    // Runs an operation on a worker, or on the calling thread if there are none or the queue is full.
+    private void submit(Runnable operation) {
+        progress.addPlanned(1);
+        if (workers == null) {
+            operation.run();
+        } else {
+            synchronized (lock) {
+                pending++;
+            }
+            workers.execute(() -> {
+                try {
+                    operation.run();
+                } finally {
+                    synchronized (lock) {
+                        if (--pending == 0) {
+                            lock.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+        reportProgress();
+    }
+
+    // Prints the progress if the last report was long enough ago. Only called by the calling thread.
+    private void reportProgress() {
+        long now = System.nanoTime();
+        if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+            lastReport = now;
+            System.out.println("  Progress: " + progress);
+        }
+    }
+
+    private static ThreadFactory restoreWorkerFactory() {
+        AtomicInteger counter = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "restore-worker-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Counters of a restore, safe to read while the workers are running.
+     */
+    public static class Progress {
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong planned = new AtomicLong();  // Copies and deletions handed to the executor
+        private final AtomicLong done = new AtomicLong();     // Copied or deleted
+        private final AtomicLong skipped = new AtomicLong();  // Already up to date
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();    // Bytes copied
+
+        void addPlanned(long count) {
+            planned.addAndGet(count);
+        }
+
+        void fileDone(long size) {
+            done.incrementAndGet();
+            bytes.addAndGet(size);
+        }
+
+        void fileSkipped() {
+            skipped.incrementAndGet();
+        }
+
+        void fileFailed() {
+            failed.incrementAndGet();
+        }
+
+        public long getDoneCount() {
+            return done.get();
+        }
+
+        public long getSkippedCount() {
+            return skipped.get();
+        }
+
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        public long getBytesCopied() {
+            return bytes.get();
+        }
+
+        /**
+         * @return The bytes copied per second since the executor was created.
+         */
+        public double getBytesPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds > 0 ? bytes.get() / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            long finished = done.get() + skipped.get() + failed.get();
+            return String.format("%d/%d files (%d up to date, %d failed), %.1f MB at %.1f MB/s",
+                    finished, planned.get(), skipped.get(), failed.get(),
+                    bytes.get() / 1e6, getBytesPerSecond() / 1e6);
+        }
+    }
+}
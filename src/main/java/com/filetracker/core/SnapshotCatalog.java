@@ -0,0 +1,225 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SnapshotCatalog
+ * ----------------
+ * Keeps every snapshot on disk so the history survives restarts.
+ * The catalog directory holds one binary snapshot file per snapshot (see SnapshotCodec)
+ * and a small text manifest with one line per snapshot: ID, timestamp, file count,
+ * total bytes and root path. Only the manifest is read at startup.
+ * <p>
+ * The snapshots handed out are LazySnapshots: their ID, time and totals come from the
+ * manifest, and their files are only opened when first needed. Opened snapshots are kept
+ * in a small LRU cache, so only recently used snapshots stay resident however long the history is.
+ */
+public class SnapshotCatalog {
+
+    /** Name of the catalog directory inside the storage directory. */
+    public static final String CATALOG_DIR = "catalog";
+
+    /** Name of the manifest file inside the catalog directory. */
+    public static final String MANIFEST_FILE = "manifest.txt";
+
+    /** Default number of opened snapshots kept in memory (property filetracker.catalog.cacheSize). */
+    public static final int DEFAULT_CACHE_SIZE = Integer.getInteger("filetracker.catalog.cacheSize", 8);
+
+    private final Path catalogDir;
+    private final List<LazySnapshot> snapshots = new ArrayList<>(); // In manifest (timeline) order
+    private final Map<Integer, Snapshot> resident;                   // LRU cache of opened snapshots
+
+    private SnapshotCatalog(Path catalogDir, int cacheSize) {
+        this.catalogDir = catalogDir;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Snapshot> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens (or creates) the catalog in a storage directory and reads its manifest.
+     *
+     * @param storageDir The directory where the tracker keeps its data.
+     * @param cacheSize  How many opened snapshots to keep in memory (at least 1).
+     * @return The catalog.
+     * @throws IOException If the catalog directory or the manifest cannot be read.
+     */
+    public static SnapshotCatalog open(Path storageDir, int cacheSize) throws IOException {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Catalog cache size must be at least 1, got: " + cacheSize);
+        }
+        Path catalogDir = storageDir.resolve(CATALOG_DIR);
+        Files.createDirectories(catalogDir);
+        SnapshotCatalog catalog = new SnapshotCatalog(catalogDir, cacheSize);
+        catalog.readManifest();
+        return catalog;
+    }
+
+    /**
+     * @return The snapshots in the catalog, oldest first. Their files are not loaded.
+     */
+    public List<LazySnapshot> getSnapshots() {
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    /**
+     * Writes a new snapshot to the catalog and records it in the manifest.
+     * The snapshot is kept in the cache, since it is likely to be used again soon, in its
+     * encoded form (see MappedSnapshot.compact): the bytes just written to the file.
+     *
+     * @param snapshot The snapshot to store.
+     * @return The catalog's lazy handle for the snapshot.
+     * @throws IOException If the snapshot or the manifest cannot be written.
+     */
+    public synchronized LazySnapshot add(Snapshot snapshot) throws IOException {
+        // Write the snapshot first: a manifest line must never point to a missing file.
+        byte[] encoded = SnapshotCodec.encodeSnapshot(snapshot);
+        Files.write(snapshotFile(snapshot.getSnapshotId()), encoded);
+        Snapshot compact = MappedSnapshot.compact(snapshot, encoded);
+
+        LazySnapshot lazy = new LazySnapshot(this, snapshot.getSnapshotId(), snapshot.getRootPath(),
+                snapshot.getTimestamp(), snapshot.getFileCount(), snapshot.getTotalBytes());
+        snapshots.add(lazy);
+        writeManifest();
+        resident.put(snapshot.getSnapshotId(), compact);
+        return lazy;
+    }
+
+    /**
+     * @return The number of opened snapshots currently held in memory.
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    // Returns the opened snapshot, mapping its file if it is not in the cache.
+    private synchronized Snapshot load(int snapshotId) {
+        Snapshot snapshot = resident.get(snapshotId);
+        if (snapshot == null) {
+            try {
+                snapshot = MappedSnapshot.open(snapshotFile(snapshotId));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error: Snapshot #" + snapshotId + " could not be read from the catalog: "
+                        + e.getMessage(), e);
+            }
+            resident.put(snapshotId, snapshot);
+        }
+        return snapshot;
+    }
+
+    private Path snapshotFile(int snapshotId) {
+        return catalogDir.resolve("snapshot_" + snapshotId + ".snap");
+    }
+
+    /**
+     * Reads the manifest (tab-separated: id, timestamp, file count, total bytes, root path).
+     * A line that cannot be parsed, e.g. one cut short by a crash, ends the manifest.
+     */
+    private void readManifest() throws IOException {
+        Path manifest = catalogDir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 5);
+            if (fields.length < 5) {
+                break;
+            }
+            try {
+                snapshots.add(new LazySnapshot(this, Integer.parseInt(fields[0]),
+                        fields[4].isEmpty() ? null : fields[4], LocalDateTime.parse(fields[1]),
+                        Integer.parseInt(fields[2]), Long.parseLong(fields[3])));
+            } catch (RuntimeException e) {
+                break;
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (LazySnapshot snapshot : snapshots) {
+            content.append(snapshot.getSnapshotId()).append('\t')
+                    .append(snapshot.getTimestamp()).append('\t')
+                    .append(snapshot.getFileCount()).append('\t')
+                    .append(snapshot.getTotalBytes()).append('\t')
+                    .append(snapshot.getRootPath() != null ? snapshot.getRootPath() : "").append('\n');
+        }
+        // Write to a temp file first so a crash never leaves a half-written manifest
+        Path manifest = catalogDir.resolve(MANIFEST_FILE);
+        Path tempFile = catalogDir.resolve(MANIFEST_FILE + ".tmp");
+        Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+        Files.move(tempFile, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A snapshot from the catalog. The ID, time and totals are always available;
+     * the files are opened through the catalog's cache on first use.
+     */
+    public static class LazySnapshot extends Snapshot {
+        private static final long serialVersionUID = 1L;
+        private final SnapshotCatalog catalog;
+        private final int fileCount;
+        private final long totalBytes;
+
+        LazySnapshot(SnapshotCatalog catalog, int snapshotId, String rootPath, LocalDateTime timestamp,
+                     int fileCount, long totalBytes) {
+            super(snapshotId, rootPath, timestamp);
+            this.catalog = catalog;
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public OrderedIndex<FileMetadata> getFileTree() {
+            return catalog.load(getSnapshotId()).getFileTree();
+        }
+
+        @Override
+        public Map<String, String> getDirectoryHashes() {
+            // Stored in the snapshot file and read when it is opened
+            return catalog.load(getSnapshotId()).getDirectoryHashes();
+        }
+
+        @Override
+        public PathFilter getPathFilter() {
+            // Read from the snapshot file, so answering it does not load the files
+            return catalog.load(getSnapshotId()).getPathFilter();
+        }
+
+        @Override
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        @Override
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        @Override
+        public void addFile(FileMetadata fileMetadata) {
+            throw new UnsupportedOperationException("Error: Snapshot #" + getSnapshotId() + " is read-only.");
+        }
+
+        @Override
+        public void addFiles(List<FileMetadata> files) {
+            throw new UnsupportedOperationException("Error: Snapshot #" + getSnapshotId() + " is read-only.");
+        }
+    }
+}
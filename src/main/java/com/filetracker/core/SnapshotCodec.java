@@ -0,0 +1,725 @@
+package com.filetracker.core;
+
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SnapshotCodec
+ * --------------
+ * Reads and writes snapshots and deltas in a compact, versioned binary format
+ * (replacing Java serialization, which could not handle BST or Delta anyway).
+ * <p>
+ * Snapshot file layout (version 1):
+ * <pre>
+ *   header   magic "FTSN", version, flags, snapshotId, timestamp, [rootPath], fileCount, blockSize
+ *   entries  sorted by path, in blocks of blockSize entries; each entry is
+ *            sharedPrefixLen, suffixLen, suffix   (front-coded UTF-8 path, reset at each block)
+ *            size, mtime - previous mtime         (varints)
+ *            hash                                 (raw 32-byte SHA-256)
+ *            [absolutePath]                       (only if it cannot be derived from rootPath)
+ *   index    blockCount, then one 8-byte file offset per block
+ *   sections optional tagged sections (tag, length, payload) that older readers skip:
+ *            PATH_FILTER (a Bloom filter over the paths, see PathFilter)
+ *            DIRECTORY_HASHES (front-coded directory paths, then one raw 32-byte Merkle hash each)
+ *   footer   index offset (8 bytes), section count (4 bytes), magic "FTND"
+ * </pre>
+ * Because every block starts with a full path, a reader can binary-search the block index
+ * and decode a single block instead of the whole file (see MappedSnapshot).
+ * <p>
+ * Delta files are a header (magic "FTDL", version, flags, [rootPath]) followed by tagged
+ * sections for added entries, deleted paths, updated entries, moves (old path + new entry)
+ * and the previous versions of deleted, updated and moved paths, ending with an END tag.
+ */
+public class SnapshotCodec {
+
+    static final int SNAPSHOT_MAGIC = 0x4654534E; // "FTSN"
+    static final int DELTA_MAGIC = 0x4654444C;    // "FTDL"
+    static final int FOOTER_MAGIC = 0x46544E44;   // "FTND"
+    static final int VERSION = 1;
+
+    static final int FLAG_HAS_ROOT = 1;
+    static final int FLAG_ABSOLUTE_PATHS = 2;
+
+    static final int FOOTER_SIZE = 16;
+    static final int HASH_BYTES = 32;
+
+    /** Number of entries per block. Smaller blocks mean faster point lookups, larger ones better compression. */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    // Optional sections of a snapshot file
+    static final int SECTION_PATH_FILTER = 1;
+    static final int SECTION_DIRECTORY_HASHES = 2;
+
+    // Delta section tags
+    static final int TAG_END = 0;
+    static final int TAG_ADDED = 1;
+    static final int TAG_DELETED = 2;
+    static final int TAG_UPDATED = 3;
+    static final int TAG_MOVED = 4;
+    static final int TAG_PREVIOUS = 5;
+
+    private SnapshotCodec() {
+    }
+
+    // =====================================================================
+    // Snapshots
+    // =====================================================================
+
+    /**
+     * Writes a snapshot to a file in the binary format.
+     *
+     * @param snapshot     The snapshot to write.
+     * @param snapshotFile The destination file (replaced if it exists).
+     * @throws IOException If the file cannot be written or a hash is not a SHA-256 hex string.
+     */
+    public static void writeSnapshot(Snapshot snapshot, Path snapshotFile) throws IOException {
+        try (BinaryWriter out = new BinaryWriter(new BufferedOutputStream(Files.newOutputStream(snapshotFile), 1 << 16))) {
+            writeSnapshot(snapshot, out);
+        }
+    }
+
+    /**
+     * Encodes a snapshot into a byte array in the binary format.
+     */
+    public static byte[] encodeSnapshot(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryWriter out = new BinaryWriter(bytes)) {
+            writeSnapshot(snapshot, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeSnapshot(Snapshot snapshot, BinaryWriter out) throws IOException {
+        OrderedIndex<FileMetadata> tree = snapshot.getFileTree();
+        String rootPath = snapshot.getRootPath();
+        boolean absolutePaths = rootPath == null || !absolutePathsDerivable(tree, rootPath);
+
+        int flags = (rootPath != null ? FLAG_HAS_ROOT : 0) | (absolutePaths ? FLAG_ABSOLUTE_PATHS : 0);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.write(VERSION);
+        out.write(flags);
+        out.writeVarLong(snapshot.getSnapshotId());
+        writeTimestamp(out, snapshot.getTimestamp());
+        if (rootPath != null) {
+            out.writeString(rootPath);
+        }
+        out.writeVarLong(tree.size());
+        out.writeVarLong(DEFAULT_BLOCK_SIZE);
+
+        // Entries, in blocks; the offset of each block goes into the index.
+        long[] blockOffsets = new long[(tree.size() + DEFAULT_BLOCK_SIZE - 1) / DEFAULT_BLOCK_SIZE];
+        EntryEncoder encoder = new EntryEncoder(absolutePaths);
+        Cursor<FileMetadata> cursor = tree.cursor();
+        for (int i = 0; cursor.hasNext(); i++) {
+            if (i % DEFAULT_BLOCK_SIZE == 0) {
+                blockOffsets[i / DEFAULT_BLOCK_SIZE] = out.position();
+                encoder.reset(); // Every block starts with a full path
+            }
+            encoder.write(out, cursor.next());
+        }
+
+        long indexOffset = out.position();
+        out.writeInt(blockOffsets.length);
+        for (long offset : blockOffsets) {
+            out.writeLong(offset);
+        }
+
+        // Optional sections, then the footer
+        PathFilter pathFilter = snapshot.getPathFilter();
+        writeSection(out, SECTION_PATH_FILTER, pathFilter::write);
+        writeSection(out, SECTION_DIRECTORY_HASHES, section -> writeDirectoryHashes(section, snapshot.getDirectoryHashes()));
+        out.writeLong(indexOffset);
+        out.writeInt(2);
+        out.writeInt(FOOTER_MAGIC);
+    }
+
+    // True if every entry's absolute path is just rootPath + relative path.
+    private static boolean absolutePathsDerivable(OrderedIndex<FileMetadata> tree, String rootPath) {
+        Path root = Paths.get(rootPath);
+        Cursor<FileMetadata> cursor = tree.cursor();
+        while (cursor.hasNext()) {
+            FileMetadata file = cursor.next();
+            if (!root.resolve(file.getFilePath()).toString().equals(file.getAbsolutePath())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Directory paths in sorted order (front-coded), then their hashes in the same order.
+    private static void writeDirectoryHashes(BinaryWriter out, Map<String, String> directoryHashes) throws IOException {
+        List<String> directories = new ArrayList<>(directoryHashes.keySet());
+        Collections.sort(directories);
+        writePaths(out, directories);
+        for (String directory : directories) {
+            out.write(hashToBytes(directoryHashes.get(directory)));
+        }
+    }
+
+    /**
+     * Reads the Merkle hashes stored by writeSnapshot.
+     *
+     * @param buffer   The buffer holding the snapshot.
+     * @param position Where the directory hashes section starts.
+     * @return A map from relative directory path to its hex Merkle hash.
+     */
+    static Map<String, String> readDirectoryHashes(ByteBuffer buffer, int position) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(position);
+        List<String> directories = new ArrayList<>();
+        readPaths(in, directories);
+        Map<String, String> directoryHashes = new HashMap<>(directories.size() * 2);
+        byte[] hash = new byte[HASH_BYTES];
+        for (String directory : directories) {
+            in.get(hash);
+            directoryHashes.put(directory, HexFormat.of().formatHex(hash));
+        }
+        return directoryHashes;
+    }
+
+    /**
+     * Reads a whole snapshot from a file into a regular (heap) Snapshot.
+     *
+     * @param snapshotFile The file written by writeSnapshot.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a valid snapshot file.
+     */
+    public static Snapshot readSnapshot(Path snapshotFile) throws IOException {
+        return decodeSnapshot(mapReadOnly(snapshotFile), snapshotFile.toString());
+    }
+
+    /**
+     * Decodes a whole snapshot from a buffer holding the binary format.
+     */
+    public static Snapshot decodeSnapshot(ByteBuffer buffer, String source) throws IOException {
+        try {
+            Header header = readHeader(buffer, source);
+            List<FileMetadata> files = new ArrayList<>(header.fileCount);
+            EntryDecoder decoder = new EntryDecoder(buffer, header);
+            decoder.position(header.entriesOffset);
+            for (int i = 0; i < header.fileCount; i++) {
+                if (i % header.blockSize == 0) {
+                    decoder.reset();
+                }
+                files.add(decoder.next());
+            }
+
+            Snapshot snapshot = new Snapshot(header.snapshotId, header.rootPath, header.timestamp);
+            snapshot.addFiles(files); // Already sorted -> O(n) bulk load
+            return snapshot;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Error: Snapshot file '" + source + "' is truncated or corrupt.", e);
+        }
+    }
+
+    /**
+     * The fixed part of a snapshot file, plus the locations of its entries and block index.
+     */
+    static class Header {
+        int flags;
+        int snapshotId;
+        LocalDateTime timestamp;
+        String rootPath;
+        int fileCount;
+        int blockSize;
+        int entriesOffset;
+        int indexOffset;
+        int blockCount;
+        int sectionsOffset; // First byte after the block index
+        int footerOffset;
+        int pathFilterOffset = -1; // Payload of the path filter section, -1 if the file has none
+        int directoryHashesOffset = -1; // Payload of the directory hashes section, -1 if the file has none
+
+        boolean absolutePaths() {
+            return (flags & FLAG_ABSOLUTE_PATHS) != 0;
+        }
+
+        int blockOffset(ByteBuffer buffer, int block) {
+            return (int) buffer.getLong(indexOffset + 4 + block * 8);
+        }
+    }
+
+    static Header readHeader(ByteBuffer buffer, String source) throws IOException {
+        if (buffer.limit() < FOOTER_SIZE + 6 || buffer.getInt(0) != SNAPSHOT_MAGIC
+                || buffer.getInt(buffer.limit() - 4) != FOOTER_MAGIC) {
+            throw new IOException("Error: '" + source + "' is not a snapshot file.");
+        }
+        int version = buffer.get(4) & 0xFF;
+        if (version > VERSION) {
+            throw new IOException("Error: '" + source + "' uses format version " + version
+                    + ", this build reads up to " + VERSION + ".");
+        }
+
+        Header header = new Header();
+        ByteBuffer in = buffer.duplicate();
+        in.position(5);
+        header.flags = in.get() & 0xFF;
+        header.snapshotId = (int) readVarLong(in);
+        header.timestamp = readTimestamp(in);
+        header.rootPath = (header.flags & FLAG_HAS_ROOT) != 0 ? readString(in) : null;
+        header.fileCount = (int) readVarLong(in);
+        header.blockSize = (int) readVarLong(in);
+        header.entriesOffset = in.position();
+
+        header.footerOffset = buffer.limit() - FOOTER_SIZE;
+        header.indexOffset = (int) buffer.getLong(header.footerOffset);
+        header.blockCount = buffer.getInt(header.indexOffset);
+        header.sectionsOffset = header.indexOffset + 4 + header.blockCount * 8;
+
+        // Sections this version does not know are skipped
+        int sectionCount = buffer.getInt(header.footerOffset + 8);
+        in.position(header.sectionsOffset);
+        for (int i = 0; i < sectionCount; i++) {
+            int tag = in.get() & 0xFF;
+            int length = (int) readVarLong(in);
+            if (tag == SECTION_PATH_FILTER) {
+                header.pathFilterOffset = in.position();
+            } else if (tag == SECTION_DIRECTORY_HASHES) {
+                header.directoryHashesOffset = in.position();
+            }
+            in.position(in.position() + length);
+        }
+        return header;
+    }
+
+    // =====================================================================
+    // Deltas
+    // =====================================================================
+
+    /**
+     * Writes a delta to a file in the binary format.
+     *
+     * @param delta     The delta to write.
+     * @param deltaFile The destination file (replaced if it exists).
+     * @throws IOException If the file cannot be written or a hash is not a SHA-256 hex string.
+     */
+    public static void writeDelta(Compression.Delta delta, Path deltaFile) throws IOException {
+        List<FileMetadata> movedFiles = new ArrayList<>(delta.movedFiles.size());
+        List<String> movedFromPaths = new ArrayList<>(delta.movedFiles.size());
+        for (Compression.Move move : delta.movedFiles) {
+            movedFiles.add(move.file);
+            movedFromPaths.add(move.fromPath);
+        }
+        boolean absolutePaths = delta.rootPath == null
+                || !absolutePathsDerivable(delta.addedFiles, delta.rootPath)
+                || !absolutePathsDerivable(delta.updatedFiles, delta.rootPath)
+                || !absolutePathsDerivable(movedFiles, delta.rootPath)
+                || !absolutePathsDerivable(delta.previousFiles, delta.rootPath);
+        int flags = (delta.rootPath != null ? FLAG_HAS_ROOT : 0) | (absolutePaths ? FLAG_ABSOLUTE_PATHS : 0);
+
+        try (BinaryWriter out = new BinaryWriter(new BufferedOutputStream(Files.newOutputStream(deltaFile), 1 << 16))) {
+            out.writeInt(DELTA_MAGIC);
+            out.write(VERSION);
+            out.write(flags);
+            if (delta.rootPath != null) {
+                out.writeString(delta.rootPath);
+            }
+
+            writeSection(out, TAG_ADDED, section -> writeEntries(section, delta.addedFiles, absolutePaths));
+            writeSection(out, TAG_DELETED, section -> writePaths(section, delta.deletedFilePaths));
+            writeSection(out, TAG_UPDATED, section -> writeEntries(section, delta.updatedFiles, absolutePaths));
+            if (!movedFiles.isEmpty()) {
+                writeSection(out, TAG_MOVED, section -> {
+                    writePaths(section, movedFromPaths);
+                    writeEntries(section, movedFiles, absolutePaths);
+                });
+            }
+            if (!delta.previousFiles.isEmpty()) {
+                writeSection(out, TAG_PREVIOUS, section -> writeEntries(section, delta.previousFiles, absolutePaths));
+            }
+            out.write(TAG_END);
+        }
+    }
+
+    /**
+     * Reads a delta written by writeDelta. Sections with unknown tags are skipped.
+     *
+     * @param deltaFile The delta file.
+     * @return The delta.
+     * @throws IOException If the file cannot be read or is not a valid delta file.
+     */
+    public static Compression.Delta readDelta(Path deltaFile) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(deltaFile));
+        try {
+            if (in.getInt() != DELTA_MAGIC) {
+                throw new IOException("Error: '" + deltaFile + "' is not a delta file.");
+            }
+            int version = in.get() & 0xFF;
+            if (version > VERSION) {
+                throw new IOException("Error: '" + deltaFile + "' uses format version " + version
+                        + ", this build reads up to " + VERSION + ".");
+            }
+            Header header = new Header();
+            header.flags = in.get() & 0xFF;
+            header.rootPath = (header.flags & FLAG_HAS_ROOT) != 0 ? readString(in) : null;
+
+            Compression.Delta delta = new Compression.Delta();
+            delta.rootPath = header.rootPath;
+            int tag;
+            while ((tag = in.get() & 0xFF) != TAG_END) {
+                int length = (int) readVarLong(in);
+                int end = in.position() + length;
+                switch (tag) {
+                    case TAG_ADDED:
+                        readEntries(in, header, delta.addedFiles);
+                        break;
+                    case TAG_DELETED:
+                        readPaths(in, delta.deletedFilePaths);
+                        break;
+                    case TAG_UPDATED:
+                        readEntries(in, header, delta.updatedFiles);
+                        break;
+                    case TAG_MOVED: {
+                        List<String> fromPaths = new ArrayList<>();
+                        List<FileMetadata> files = new ArrayList<>();
+                        readPaths(in, fromPaths);
+                        readEntries(in, header, files);
+                        for (int i = 0; i < files.size(); i++) {
+                            delta.movedFiles.add(new Compression.Move(fromPaths.get(i), files.get(i)));
+                        }
+                        break;
+                    }
+                    case TAG_PREVIOUS:
+                        readEntries(in, header, delta.previousFiles);
+                        break;
+                    default:
+                        break; // Written by a newer version - skip it
+                }
+                in.position(end);
+            }
+            return delta;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Error: Delta file '" + deltaFile + "' is truncated or corrupt.", e);
+        }
+    }
+
+    private static boolean absolutePathsDerivable(List<FileMetadata> files, String rootPath) {
+        Path root = Paths.get(rootPath);
+        for (FileMetadata file : files) {
+            if (!root.resolve(file.getFilePath()).toString().equals(file.getAbsolutePath())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    interface SectionWriter {
+        void write(BinaryWriter section) throws IOException;
+    }
+
+    // Writes one tagged section: tag, payload length, payload.
+    static void writeSection(BinaryWriter out, int tag, SectionWriter payloadWriter) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (BinaryWriter section = new BinaryWriter(payload)) {
+            payloadWriter.write(section);
+        }
+        out.write(tag);
+        out.writeVarLong(payload.size());
+        payload.writeTo(out);
+    }
+
+    private static void writeEntries(BinaryWriter out, List<FileMetadata> files, boolean absolutePaths) throws IOException {
+        out.writeVarLong(files.size());
+        EntryEncoder encoder = new EntryEncoder(absolutePaths);
+        for (FileMetadata file : files) {
+            encoder.write(out, file);
+        }
+    }
+
+    private static void readEntries(ByteBuffer in, Header header, List<FileMetadata> files) {
+        int count = (int) readVarLong(in);
+        EntryDecoder decoder = new EntryDecoder(in, header);
+        decoder.position(in.position());
+        for (int i = 0; i < count; i++) {
+            files.add(decoder.next());
+        }
+        in.position(decoder.position());
+    }
+
+    private static void writePaths(BinaryWriter out, List<String> paths) throws IOException {
+        out.writeVarLong(paths.size());
+        byte[] previous = new byte[0];
+        for (String path : paths) {
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(previous, bytes);
+            out.writeVarLong(shared);
+            out.writeVarLong(bytes.length - shared);
+            out.write(bytes, shared, bytes.length - shared);
+            previous = bytes;
+        }
+    }
+
+    private static void readPaths(ByteBuffer in, List<String> paths) {
+        int count = (int) readVarLong(in);
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            previous = readFrontCoded(in, previous);
+            paths.add(new String(previous, StandardCharsets.UTF_8));
+        }
+    }
+
+    // =====================================================================
+    // Entries
+    // =====================================================================
+
+    /**
+     * Writes FileMetadata entries with front-coded paths and delta-coded mtimes.
+     */
+    static class EntryEncoder {
+        private final boolean absolutePaths;
+        private byte[] previousPath = new byte[0];
+        private long previousMtime = 0;
+
+        EntryEncoder(boolean absolutePaths) {
+            this.absolutePaths = absolutePaths;
+        }
+
+        void reset() {
+            previousPath = new byte[0];
+            previousMtime = 0;
+        }
+
+        void write(BinaryWriter out, FileMetadata file) throws IOException {
+            byte[] path = file.getFilePath().getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(previousPath, path);
+            out.writeVarLong(shared);
+            out.writeVarLong(path.length - shared);
+            out.write(path, shared, path.length - shared);
+            out.writeVarLong(file.getFileSize());
+            out.writeVarLong(zigZag(file.getLastModified() - previousMtime));
+            byte[] hash = file.getHashBytes();
+            out.write(hash != null ? hash : hashToBytes(file.getFileHash()));
+            if (absolutePaths) {
+                out.writeString(file.getAbsolutePath());
+            }
+            previousPath = path;
+            previousMtime = file.getLastModified();
+        }
+    }
+
+    /**
+     * Reads entries written by EntryEncoder from a buffer, one after another.
+     * The buffer's own position is never touched, so one mapped buffer can serve many decoders.
+     */
+    static class EntryDecoder {
+        private final ByteBuffer in;
+        private final boolean absolutePaths;
+        private final String rootPath; // Shared by every decoded entry
+        private byte[] previousPath = new byte[0];
+        private long previousMtime = 0;
+
+        EntryDecoder(ByteBuffer buffer, Header header) {
+            this.in = buffer.duplicate();
+            this.absolutePaths = header.absolutePaths();
+            this.rootPath = header.rootPath;
+        }
+
+        void position(int position) {
+            in.position(position);
+        }
+
+        int position() {
+            return in.position();
+        }
+
+        void reset() {
+            previousPath = new byte[0];
+            previousMtime = 0;
+        }
+
+        /**
+         * Decodes only the path of the next entry and leaves the position at its size field.
+         * Used by readers that want to compare keys before decoding the rest.
+         */
+        String nextKey() {
+            previousPath = readFrontCoded(in, previousPath);
+            return new String(previousPath, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodes the rest of the entry whose key was just read by nextKey().
+         */
+        FileMetadata finish(String filePath) {
+            long size = readVarLong(in);
+            long mtime = previousMtime + unZigZag(readVarLong(in));
+            byte[] hash = new byte[HASH_BYTES];
+            in.get(hash);
+            // Derived absolute paths are not stored: every entry shares the one root String
+            String absolutePath = absolutePaths ? readString(in) : rootPath != null ? null : filePath;
+            previousMtime = mtime;
+            return new FileMetadata(filePath, rootPath, absolutePath, size, mtime, hash);
+        }
+
+        /**
+         * Skips the rest of the entry whose key was just read by nextKey().
+         */
+        void skip() {
+            readVarLong(in);
+            previousMtime += unZigZag(readVarLong(in));
+            in.position(in.position() + HASH_BYTES);
+            if (absolutePaths) {
+                int length = (int) readVarLong(in);
+                in.position(in.position() + length);
+            }
+        }
+
+        FileMetadata next() {
+            return finish(nextKey());
+        }
+    }
+
+    static int sharedPrefix(byte[] a, byte[] b) {
+        int max = Math.min(a.length, b.length);
+        int i = Arrays.mismatch(a, 0, max, b, 0, max);
+        return i < 0 ? max : i;
+    }
+
+    static byte[] readFrontCoded(ByteBuffer in, byte[] previous) {
+        int shared = (int) readVarLong(in);
+        int suffixLength = (int) readVarLong(in);
+        byte[] path = Arrays.copyOf(previous, shared + suffixLength);
+        in.get(path, shared, suffixLength);
+        return path;
+    }
+
+    static byte[] hashToBytes(String hexHash) throws IOException {
+        if (hexHash == null || hexHash.length() != HASH_BYTES * 2) {
+            throw new IOException("Error: '" + hexHash + "' is not a SHA-256 hash.");
+        }
+        try {
+            return HexFormat.of().parseHex(hexHash);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Error: '" + hexHash + "' is not a SHA-256 hash.", e);
+        }
+    }
+
+    // =====================================================================
+    // Primitives
+    // =====================================================================
+
+    private static void writeTimestamp(BinaryWriter out, LocalDateTime timestamp) throws IOException {
+        // Stored as the local date-time itself, so it reads back identically in any time zone.
+        out.writeVarLong(zigZag(timestamp.toEpochSecond(ZoneOffset.UTC)));
+        out.writeVarLong(timestamp.getNano());
+    }
+
+    private static LocalDateTime readTimestamp(ByteBuffer in) {
+        long seconds = unZigZag(readVarLong(in));
+        int nanos = (int) readVarLong(in);
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static ByteBuffer mapReadOnly(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Error: '" + file + "' is larger than 2 GB and cannot be mapped.");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * An output stream with big-endian fixed-width writes, varints and a byte position.
+     */
+    static class BinaryWriter extends FilterOutputStream {
+        private long position;
+
+        BinaryWriter(OutputStream out) {
+            super(out);
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        void writeInt(int value) throws IOException {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
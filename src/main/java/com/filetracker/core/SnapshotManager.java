@@ -4,9 +4,16 @@ import com.filetracker.models.FileMetadata;
 import com.filetracker.models.Snapshot;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SnapshotManager
@@ -20,6 +27,23 @@ public class SnapshotManager {
 
     private LinkedList snapshotTimeline; // The chronological list of snapshots
     private int nextSnapshotId;          // Counter to assign unique IDs to snapshots
+    private int scanWorkers;             // Number of hash workers used when scanning a directory
+    private boolean incremental;         // Reuse hashes of files unchanged since the previous snapshot
+    private boolean paranoid;            // Rehash every file even in incremental mode
+    private Map<String, Snapshot> latestSnapshotByRoot; // Most recent snapshot of each directory
+    private HashCache hashCache;         // Persistent hash cache (null when running without storage)
+    private SnapshotCatalog catalog;     // Persistent snapshot history (null when running without storage)
+    private ObjectStore objectStore;     // File contents of all snapshots (null when running without storage)
+
+    /** File name of the persistent hash cache inside the storage directory. */
+    public static final String HASH_CACHE_FILE = "hashcache.bin";
+
+    /**
+     * Files modified this close to (or after) the previous snapshot's start are always rehashed,
+     * and files changed this close to the current scan's start are not put into the hash cache.
+     * Their mtime may not have moved yet on coarse-grained file systems ("racily clean" files).
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
 
     /**
      * Constructor. Initializes an empty timeline.
@@ -27,14 +51,114 @@ public class SnapshotManager {
     public SnapshotManager() {
         this.snapshotTimeline = new LinkedList();
         this.nextSnapshotId = 1; // Start IDs from 1
+        this.scanWorkers = FileUtils.DEFAULT_SCAN_WORKERS;
+        this.incremental = true;
+        this.paranoid = false;
+        this.latestSnapshotByRoot = new HashMap<>();
+    }
+
+    /**
+     * Constructor. Initializes the timeline from a storage directory.
+     * The storage directory holds the snapshot catalog, so the history of earlier runs
+     * is available at once (snapshots are only read from disk when they are used),
+     * the object store, which keeps the content of every snapshotted file so it can be
+     * restored later, and the persistent hash cache, so the first snapshot after a restart
+     * only has to stat files that have not changed.
+     *
+     * @param storagePath The directory where the tracker keeps its data.
+     * @throws IOException If the storage directory or the hash cache cannot be opened.
+     */
+    public SnapshotManager(String storagePath) throws IOException {
+        this();
+        Path storageDir = Paths.get(storagePath);
+        Files.createDirectories(storageDir);
+        this.hashCache = HashCache.open(storageDir.resolve(HASH_CACHE_FILE));
+        this.catalog = SnapshotCatalog.open(storageDir, SnapshotCatalog.DEFAULT_CACHE_SIZE);
+        this.objectStore = new ObjectStore(storageDir.resolve(ObjectStore.OBJECTS_DIR));
+        setChunking(Boolean.getBoolean("filetracker.chunking"));
+
+        for (Snapshot snapshot : catalog.getSnapshots()) {
+            snapshotTimeline.append(snapshot);
+            if (snapshot.getRootPath() != null) {
+                latestSnapshotByRoot.put(snapshot.getRootPath(), snapshot);
+            }
+            nextSnapshotId = Math.max(nextSnapshotId, snapshot.getSnapshotId() + 1);
+        }
+    }
+
+    /**
+     * Sets how many worker threads hash files while a directory is scanned.
+     * A value of 1 scans and hashes on the calling thread.
+     *
+     * @param scanWorkers The number of hash workers (must be at least 1).
+     */
+    public void setScanWorkers(int scanWorkers) {
+        if (scanWorkers < 1) {
+            throw new IllegalArgumentException("Scan workers must be at least 1, got: " + scanWorkers);
+        }
+        this.scanWorkers = scanWorkers;
+    }
+
+    /**
+     * @return The number of hash workers used when scanning a directory.
+     */
+    public int getScanWorkers() {
+        return scanWorkers;
+    }
+
+    /**
+     * Enables or disables incremental snapshots. When enabled, a file whose relative path,
+     * size and last-modified time match the previous snapshot of the same directory
+     * keeps its stored hash instead of being read again.
+     *
+     * @param incremental true to reuse hashes of unchanged files.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Enables or disables paranoid mode. In paranoid mode every file is rehashed,
+     * even if incremental snapshots are enabled.
+     *
+     * @param paranoid true to always read and hash every file.
+     */
+    public void setParanoid(boolean paranoid) {
+        this.paranoid = paranoid;
+    }
+
+    public boolean isParanoid() {
+        return paranoid;
+    }
+
+    /**
+     * Enables or disables chunked storage of large files in the object store
+     * (property filetracker.chunking). With chunking, a large file that changes only a little
+     * between snapshots adds only the changed chunks to the store instead of a full copy.
+     * Has no effect when running without storage.
+     *
+     * @param chunking true to store large files as content-defined chunks.
+     */
+    public void setChunking(boolean chunking) {
+        if (objectStore != null) {
+            objectStore.setChunker(chunking ? new Chunker() : null);
+        }
+    }
+
+    public boolean isChunking() {
+        return objectStore != null && objectStore.getChunker() != null;
     }
 
     /**
      * Takes a snapshot of the specified directory.
-     * 1. Scans the directory using FileUtils.
-     * 2. Creates a new Snapshot object.
+     * 1. Creates a new Snapshot object (its timestamp marks the start of the scan).
+     * 2. Scans the directory using FileUtils, reusing hashes of unchanged files in incremental mode.
      * 3. Populates the snapshot's BST with FileMetadata.
-     * 4. Appends the snapshot to the timeline.
+     * 4. Appends the snapshot to the timeline (and writes it to the catalog, if there is one).
      *
      * @param directoryPath The path of the directory to snapshot.
      * @return The newly created Snapshot object.
@@ -42,28 +166,129 @@ public class SnapshotManager {
      */
     public Snapshot takeSnapshot(String directoryPath) throws IOException {
         System.out.println("Scanning directory: " + directoryPath);
-        // 1. & 2. Scan directory and get list of files with metadata
         // We need to pass the base directory path to FileUtils so it can calculate relative paths.
-        Path baseDirPath = Paths.get(directoryPath).toAbsolutePath();
-        List<FileMetadata> files = FileUtils.scanDirectory(directoryPath, baseDirPath);
+        Path baseDirPath = Paths.get(directoryPath).toAbsolutePath().normalize();
+        String rootPath = baseDirPath.toString();
 
-        // 3. Create a new snapshot
-        Snapshot newSnapshot = new Snapshot(nextSnapshotId++);
+        // 1. Create the snapshot before scanning, so its timestamp marks the start of the scan.
+        Snapshot newSnapshot = new Snapshot(nextSnapshotId, rootPath);
 
-        // 4. Insert each file's metadata into the snapshot's BST
-        // CORRECTION: The addFile method only takes the FileMetadata object.
+        IncrementalLookup incrementalLookup = null;
+        Snapshot previous = latestSnapshotByRoot.get(rootPath);
+        if (incremental && !paranoid && previous != null) {
+            incrementalLookup = new IncrementalLookup(previous);
+        }
+        // The in-memory previous snapshot is asked first; the persistent cache covers cold starts.
+        int cacheHitsBefore = hashCache != null ? hashCache.getHitCount() : 0;
+        if (hashCache != null) {
+            hashCache.beginScan(newSnapshot.getTimestampMillis() - RACY_WINDOW_MILLIS);
+        }
+        HashLookup hashLookup = HashLookup.chain(incrementalLookup, paranoid ? null : hashCache);
+
+        // 2. Scan directory and get list of files with metadata.
+        // Walk the absolute path so relative paths can always be computed against baseDirPath.
+        List<FileMetadata> files = FileUtils.scanDirectory(rootPath, baseDirPath, scanWorkers, hashLookup);
+
+        // The scan succeeded, so the snapshot now owns its ID
+        nextSnapshotId++;
+
+        // 3. Bulk-load the files into the snapshot's BST
         // The Snapshot class internally uses file.getFilePath() as the key for the BST.
-        for (FileMetadata file : files) {
-            newSnapshot.addFile(file); // This is the correct call
+        newSnapshot.addFiles(files);
+        newSnapshot.getDirectoryHashes(); // Merkle hashes are computed at snapshot time
+        newSnapshot.getPathFilter();      // So is the path filter, which is stored with it
+
+        if (objectStore != null) {
+            storeContents(newSnapshot, previous);
         }
 
-        // 5. Add the snapshot to the timeline
-        snapshotTimeline.append(newSnapshot);
+        // 4. Add the snapshot to the timeline
+        // With a catalog, the timeline holds the catalog's lazy handle, so the files can be
+        // evicted from memory later; the snapshot itself stays cached while it is recent.
+        Snapshot timelineEntry = catalog != null ? catalog.add(newSnapshot) : newSnapshot;
+        snapshotTimeline.append(timelineEntry);
+        latestSnapshotByRoot.put(rootPath, timelineEntry);
+
+        if (hashCache != null) {
+            // Forget cached hashes of files that were deleted, renamed or modified since the last scan
+            hashCache.evictMissing(rootPath, files);
+            hashCache.flush();
+        }
 
         System.out.println("Snapshot #" + newSnapshot.getSnapshotId() + " created at " + newSnapshot.getFormattedTimestamp() + " | Files: " + files.size());
+        if (incrementalLookup != null) {
+            System.out.println("Reused " + incrementalLookup.getReusedCount() + " hashes from Snapshot #" + previous.getSnapshotId());
+        }
+        if (hashCache != null && hashCache.getHitCount() > cacheHitsBefore) {
+            System.out.println("Reused " + (hashCache.getHitCount() - cacheHitsBefore) + " hashes from the hash cache");
+        }
         return newSnapshot;
     }
 
+    /**
+     * Copies the content of every new or modified file into the object store, on the hash workers.
+     * The files come from a diff against the previous snapshot, so a file with the same hash as
+     * its previous entry costs nothing, and a directory with the same Merkle hash is skipped whole.
+     * A modified file is offered its previous version as a delta base.
+     */
+    private void storeContents(Snapshot snapshot, Snapshot previous) throws IOException {
+        long objectsBefore = objectStore.getStoredCount();
+        long bytesBefore = objectStore.getStoredBytes();
+        Iterator<DiffEngine.DiffResult> changes = new DiffEngine().iterate(previous, snapshot,
+                new DiffEngine.DiffOptions().types(DiffEngine.DiffResult.ChangeType.ADDED, DiffEngine.DiffResult.ChangeType.UPDATED));
+        FileUtils.forEachParallel(changes, scanWorkers, change -> {
+            FileMetadata file = change.getNewFileMeta();
+            try {
+                objectStore.store(file, change.getOldFileMeta()); // No previous version for ADDED files
+            } catch (IOException e) {
+                System.err.println("  Failed to store content of: " + file.getFilePath() + " - " + e.getMessage());
+            }
+        });
+        System.out.println("Stored " + (objectStore.getStoredCount() - objectsBefore) + " new objects ("
+                + (objectStore.getStoredBytes() - bytesBefore) + " bytes)");
+    }
+
+    /**
+     * Reuses the hashes stored in a previous snapshot of the same directory
+     * for files whose relative path, size and last-modified time are unchanged.
+     * The previous snapshot is never modified, so concurrent lookups from hash workers are safe.
+     */
+    private static class IncrementalLookup implements HashLookup {
+        private final OrderedIndex<FileMetadata> previousTree;
+        private final PathFilter previousPaths;
+        private final long racyCutoffMillis;
+        private final AtomicInteger reusedCount = new AtomicInteger();
+
+        IncrementalLookup(Snapshot previous) {
+            this.previousTree = previous.getFileTree();
+            this.previousPaths = previous.getPathFilter();
+            this.racyCutoffMillis = previous.getTimestampMillis() - RACY_WINDOW_MILLIS;
+        }
+
+        @Override
+        public byte[] lookup(Path file, String relativePath, BasicFileAttributes attrs) {
+            if (!previousPaths.mightContain(relativePath)) {
+                return null; // New file, no need to search the tree
+            }
+            FileMetadata old = previousTree.search(relativePath);
+            if (old == null
+                    || old.getFileSize() != attrs.size()
+                    || old.getLastModified() != attrs.lastModifiedTime().toMillis()
+                    || old.getLastModified() >= racyCutoffMillis) {
+                return null; // New, changed or racily clean -> hash it
+            }
+            byte[] hash = old.getHashBytes();
+            if (hash != null) {
+                reusedCount.incrementAndGet();
+            }
+            return hash; // Null for a non-SHA-256 hash, which is then recomputed
+        }
+
+        int getReusedCount() {
+            return reusedCount.get();
+        }
+    }
+
     /**
      * Retrieves a snapshot by its index in the timeline.
      *
@@ -75,6 +300,26 @@ public class SnapshotManager {
         return snapshotTimeline.get(index);
     }
 
+    /**
+     * Retrieves a snapshot by its ID in O(1).
+     *
+     * @param snapshotId The ID of the snapshot (starting at 1).
+     * @return The Snapshot, or null if no snapshot has this ID.
+     */
+    public Snapshot getSnapshotById(int snapshotId) {
+        return snapshotTimeline.getById(snapshotId);
+    }
+
+    /**
+     * Retrieves the snapshot that was current at a given time, in O(log n).
+     *
+     * @param time The point in time (e.g. 2026-10-01T12:00).
+     * @return The latest snapshot taken at or before 'time', or null if there is none.
+     */
+    public Snapshot getSnapshotAsOf(LocalDateTime time) {
+        return snapshotTimeline.getAsOf(time);
+    }
+
     /**
      * Retrieves the most recent snapshot.
      *
@@ -108,6 +353,24 @@ public class SnapshotManager {
         snapshotTimeline.printList();
     }
 
+    /**
+     * Releases the persistent hash cache, if any. Call this before the application exits.
+     *
+     * @throws IOException If the cache cannot be written back.
+     */
+    public void close() throws IOException {
+        if (hashCache != null) {
+            hashCache.close();
+        }
+    }
+
+    /**
+     * @return The store holding the content of snapshotted files, or null when running without storage.
+     */
+    public ObjectStore getObjectStore() {
+        return objectStore;
+    }
+
     /**
      * Gets the internal timeline (LinkedList) of snapshots.
      * This is provided for other components like the DiffEngine.
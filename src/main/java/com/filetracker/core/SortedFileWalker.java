@@ -0,0 +1,130 @@
+package com.filetracker.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SortedFileWalker
+ * -----------------
+ * Walks a directory tree and returns its regular files in the same order as snapshot keys
+ * (relative paths compared as strings), so the walk can be merged with a snapshot cursor
+ * in one pass instead of looking every file up in the tree.
+ * <p>
+ * A plain depth-first walk is not in key order: "a.txt" sorts before "a/b.txt" because '.'
+ * comes before the separator. So the children of each directory are sorted by name, with
+ * a directory compared as its name plus the separator, i.e. exactly as the keys of the files
+ * inside it compare. Only the directories on the current path are held in memory.
+ * Symbolic links are not followed (like the snapshot scan).
+ */
+public class SortedFileWalker implements Iterator<SortedFileWalker.Entry> {
+
+    /**
+     * A regular file found by the walk.
+     */
+    public static class Entry {
+        private final String key;
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        Entry(String key, Path path, BasicFileAttributes attributes) {
+            this.key = key;
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        /** @return The path relative to the base directory, as used for snapshot keys. */
+        public String getKey() { return key; }
+        public Path getPath() { return path; }
+        public BasicFileAttributes getAttributes() { return attributes; }
+    }
+
+    private final Path baseDir;
+    private final Deque<Iterator<Entry>> stack = new ArrayDeque<>(); // Sorted children of each open directory
+    private Entry next;
+
+    /**
+     * @param startDir The directory to walk (does not need to exist).
+     * @param baseDir  The directory keys are relative to (startDir or one of its ancestors).
+     */
+    public SortedFileWalker(Path startDir, Path baseDir) {
+        this.baseDir = baseDir;
+        if (Files.isDirectory(startDir, LinkOption.NOFOLLOW_LINKS)) {
+            stack.push(sortedChildren(startDir).iterator());
+        }
+        this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Entry next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = next;
+        next = advance();
+        return entry;
+    }
+
+    /**
+     * @return The key of the next file without moving on, or null at the end.
+     */
+    public String peekKey() {
+        return next != null ? next.key : null;
+    }
+
+    private Entry advance() {
+        while (!stack.isEmpty()) {
+            Iterator<Entry> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Entry child = children.next();
+            if (child.attributes.isDirectory()) {
+                stack.push(sortedChildren(child.path).iterator());
+            } else if (child.attributes.isRegularFile()) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    // Lists one directory, sorted as the keys of its contents compare.
+    private List<Entry> sortedChildren(Path directory) {
+        List<Entry> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    children.add(new Entry(baseDir.relativize(child).toString(), child, attrs));
+                } catch (IOException e) {
+                    System.err.println("Failed to access: " + child + " - " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to access: " + directory + " - " + e.getMessage());
+        }
+        children.sort(Comparator.comparing(SortedFileWalker::sortKey));
+        return children;
+    }
+
+    private static String sortKey(Entry entry) {
+        return entry.attributes.isDirectory() ? entry.key + File.separatorChar : entry.key;
+    }
+}
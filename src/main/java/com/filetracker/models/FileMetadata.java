@@ -1,44 +1,121 @@
 package com.filetracker.models;
 
+import com.filetracker.core.FileHasher;
+import com.filetracker.core.HashLookup;
+
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.util.HexFormat;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HexFormat;
 
 
+/**
+ * The metadata of one tracked file.
+ * Kept compact, since a snapshot holds one per file: the base directory is a single String
+ * shared by all files of a snapshot, so the absolute path is only stored when it cannot be
+ * derived from it, and the SHA-256 hash is kept as 32 raw bytes instead of 64 hex characters.
+ */
 public class FileMetadata implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+    private static final int HASH_BYTES = 32;
+
     private String filePath;        // Relative path (used as key in BST)
-    private String absolutePath;    // Absolute path (used for restore)
+    private String basePath;        // Snapshotted directory, shared by the snapshot's files (may be null)
+    private String absolutePath;    // Absolute path (used for restore); null if it is basePath + filePath
     private long fileSize;          // Size of file in bytes
     private long lastModified;      // Last modified time in milliseconds since epoch
-    private String fileHash;        // SHA-256 hash of the file contents
+    private byte[] hash;            // SHA-256 hash of the file contents, as raw bytes
+    private String fileHash;        // Only set for a hash that is not SHA-256 hex (null otherwise)
 
 
     public FileMetadata(Path path, Path baseDir) throws IOException {
-        this.absolutePath = path.toString();
+        this(path, baseDir, Files.readAttributes(path, BasicFileAttributes.class)); // One stat for size + mtime
+    }
+
+
+    /**
+     * Builds the metadata from attributes the caller already has (e.g. from Files.walkFileTree),
+     * so the file is not stat'ed again. The content is hashed in constant memory.
+     */
+    public FileMetadata(Path path, Path baseDir, BasicFileAttributes attrs) throws IOException {
+        this(path, baseDir, attrs, null);
+    }
+
+
+    /**
+     * Same as above, but asks 'hashLookup' for a known hash first and only reads the file on a miss.
+     * 'hashLookup' may be null, in which case the file is always hashed.
+     */
+    public FileMetadata(Path path, Path baseDir, BasicFileAttributes attrs, HashLookup hashLookup) throws IOException {
         this.filePath = baseDir.relativize(path).toString(); // Calculate relative path
-        this.fileSize = Files.size(path);
-        this.lastModified = Files.getLastModifiedTime(path).toMillis();
-        this.fileHash = calculateFileHash(path);
+        this.basePath = baseDir.toString(); // Paths cache their string, so all files share it
+        String absolute = path.toString();
+        this.absolutePath = absolute.equals(join(basePath, filePath)) ? null : absolute;
+        this.fileSize = attrs.size();
+        this.lastModified = attrs.lastModifiedTime().toMillis();
+
+        byte[] knownHash = hashLookup != null ? hashLookup.lookup(path, filePath, attrs) : null;
+        if (knownHash != null && knownHash.length == HASH_BYTES) {
+            this.hash = knownHash; // Unchanged file - no need to read it
+        } else {
+            this.hash = FileHasher.hashBytes(path, fileSize);
+            if (hashLookup != null) {
+                hashLookup.record(path, filePath, attrs, hash);
+            }
+        }
     }
 
+    /**
+     * Builds the metadata from stored values (e.g. when a snapshot is read back from disk).
+     */
+    public FileMetadata(String filePath, String absolutePath, long fileSize, long lastModified, String fileHash) {
+        this.filePath = filePath;
+        this.absolutePath = absolutePath;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        setHash(fileHash);
+    }
 
-    private String calculateFileHash(Path path) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] fileBytes = Files.readAllBytes(path);
-            byte[] hashBytes = digest.digest(fileBytes);
+    /**
+     * Builds the metadata from stored values in their compact form.
+     *
+     * @param basePath     The snapshotted directory; pass the same String for every file of a snapshot.
+     * @param absolutePath The absolute path, or null if it is basePath + filePath.
+     * @param hash         The 32-byte SHA-256 hash (kept, not copied).
+     */
+    public FileMetadata(String filePath, String basePath, String absolutePath, long fileSize, long lastModified, byte[] hash) {
+        if (hash.length != HASH_BYTES || (basePath == null && absolutePath == null)) {
+            throw new IllegalArgumentException("Need a 32-byte hash and a base or absolute path for: " + filePath);
+        }
+        this.filePath = filePath;
+        this.basePath = basePath;
+        this.absolutePath = absolutePath;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
 
-            // Convert byte array to hex string (Java 17+ has HexFormat)
-            return HexFormat.of().formatHex(hashBytes);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found!", e);
+    // Keeps a SHA-256 hex hash as raw bytes; anything else is kept as given.
+    private void setHash(String hexHash) {
+        if (hexHash != null && hexHash.length() == HASH_BYTES * 2) {
+            try {
+                this.hash = HexFormat.of().parseHex(hexHash);
+                return;
+            } catch (IllegalArgumentException e) {
+                // Not hex - keep the string
+            }
         }
+        this.fileHash = hexHash;
+    }
+
+    // The absolute path of 'filePath' under 'basePath', as Path.resolve would give it.
+    private static String join(String basePath, String filePath) {
+        return basePath.endsWith(File.separator) ? basePath + filePath : basePath + File.separator + filePath;
     }
 
     // ---------- Getters ---------- //
@@ -47,7 +124,7 @@ public class FileMetadata implements Serializable {
     }
 
     public String getAbsolutePath() {
-        return absolutePath;
+        return absolutePath != null ? absolutePath : join(basePath, filePath);
     }
 
     public long getFileSize() {
@@ -58,18 +135,38 @@ public class FileMetadata implements Serializable {
         return lastModified;
     }
 
+    /**
+     * @return The SHA-256 hash as a hex string (built from the raw bytes on each call).
+     */
     public String getFileHash() {
-        return fileHash;
+        return hash != null ? HexFormat.of().formatHex(hash) : fileHash;
+    }
+
+    /**
+     * @return A copy of the raw 32-byte hash, or null if the hash is not SHA-256 hex.
+     */
+    public byte[] getHashBytes() {
+        return hash != null ? hash.clone() : null;
+    }
+
+    /**
+     * @return true if both files have the same content hash (compared without building hex strings).
+     */
+    public boolean hasSameContent(FileMetadata other) {
+        if (hash != null && other.hash != null) {
+            return Arrays.equals(hash, other.hash);
+        }
+        return getFileHash().equals(other.getFileHash());
     }
 
     @Override
     public String toString() {
         return "FileMetadata{" +
                 "relativePath='" + filePath + '\'' +
-                ", absolutePath='" + absolutePath + '\'' +
+                ", absolutePath='" + getAbsolutePath() + '\'' +
                 ", size=" + fileSize +
                 ", lastModified=" + Instant.ofEpochMilli(lastModified) +
-                ", hash='" + fileHash + '\'' +
+                ", hash='" + getFileHash() + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,7 +1,16 @@
 package com.filetracker.models;
 
 import com.filetracker.core.BST;
+import com.filetracker.core.Cursor;
+import com.filetracker.core.MerkleHasher;
+import com.filetracker.core.OrderedIndex;
+import com.filetracker.core.PathFilter;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.io.Serializable;
 
@@ -10,12 +19,30 @@ public class Snapshot implements Serializable {
     private static final long serialVersionUID = 1L;
     private int snapshotId;          // Unique ID for snapshot
     private LocalDateTime timestamp; // Time when snapshot was taken
+    private String rootPath;         // Absolute path of the snapshotted directory (null if unknown)
     private BST<FileMetadata> fileTree; // BST holding files of this snapshot
+    private Map<String, String> directoryHashes; // Merkle hash per directory (computed on demand)
+    private long totalBytes = -1;    // Sum of all file sizes (computed on demand, -1 if not yet)
+    private transient PathFilter pathFilter; // Bloom filter over the paths (built on demand)
 
 
     public Snapshot(int snapshotId) {
+        this(snapshotId, null);
+    }
+
+
+    public Snapshot(int snapshotId, String rootPath) {
+        this(snapshotId, rootPath, LocalDateTime.now()); // Set current time
+    }
+
+
+    /**
+     * Creates a snapshot with a known timestamp (e.g. when it is read back from storage).
+     */
+    public Snapshot(int snapshotId, String rootPath, LocalDateTime timestamp) {
         this.snapshotId = snapshotId;
-        this.timestamp = LocalDateTime.now(); // Set current time
+        this.timestamp = timestamp;
+        this.rootPath = rootPath;
         this.fileTree = new BST<>(); // Empty BST initially
     }
 
@@ -24,17 +51,122 @@ public class Snapshot implements Serializable {
 
     public void addFile(FileMetadata fileMetadata) {
         fileTree.insert(fileMetadata.getFilePath(), fileMetadata);
+        directoryHashes = null; // The Merkle hashes are out of date
+        totalBytes = -1;
+        pathFilter = null;
+    }
+
+
+    /**
+     * Adds many files at once. If the snapshot is still empty, the files are sorted
+     * (cheap for the nearly-sorted output of a directory walk) and bulk-loaded into
+     * a balanced tree in O(n); otherwise they are inserted one by one.
+     */
+    public void addFiles(List<FileMetadata> files) {
+        if (!fileTree.isEmpty()) {
+            for (FileMetadata file : files) {
+                addFile(file);
+            }
+            return;
+        }
+        List<FileMetadata> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(FileMetadata::getFilePath));
+        fileTree = BST.fromSorted(sorted, FileMetadata::getFilePath);
+        directoryHashes = null;
+        totalBytes = -1;
+        pathFilter = null;
+    }
+
+
+    /**
+     * Returns the Merkle hash of every directory, keyed by relative directory path
+     * ("" for the snapshot root). Computed once and cached until the snapshot changes.
+     */
+    public Map<String, String> getDirectoryHashes() {
+        if (directoryHashes == null) {
+            directoryHashes = MerkleHasher.computeDirectoryHashes(getFileTree());
+        }
+        return directoryHashes;
+    }
+
+
+    /**
+     * Sets Merkle hashes computed elsewhere for the same files (e.g. when a snapshot is re-encoded).
+     */
+    protected void setDirectoryHashes(Map<String, String> directoryHashes) {
+        this.directoryHashes = directoryHashes;
+    }
+
+    /**
+     * Returns a Bloom filter over the relative paths of this snapshot.
+     * Built once and cached until the snapshot changes; stored with the snapshot on disk.
+     */
+    public PathFilter getPathFilter() {
+        if (pathFilter == null) {
+            pathFilter = PathFilter.build(getFileTree());
+        }
+        return pathFilter;
     }
 
+    /**
+     * Checks whether a file is tracked in this snapshot. Paths that are not tracked
+     * are usually rejected by the path filter, without searching the file tree.
+     *
+     * @param relativePath The relative path of the file.
+     * @return true if the snapshot contains the file.
+     */
+    public boolean containsPath(String relativePath) {
+        return getPathFilter().mightContain(relativePath) && getFileTree().search(relativePath) != null;
+    }
 
-    public BST<FileMetadata> getFileTree() {
+    /**
+     * @return The files of this snapshot, sorted by relative path.
+     */
+    public OrderedIndex<FileMetadata> getFileTree() {
         return fileTree;
     }
 
+    /**
+     * @return The number of files in this snapshot.
+     */
+    public int getFileCount() {
+        return getFileTree().size();
+    }
+
+    /**
+     * @return The total size of all files in this snapshot, in bytes.
+     */
+    public long getTotalBytes() {
+        if (totalBytes < 0) {
+            long sum = 0;
+            Cursor<FileMetadata> cursor = getFileTree().cursor();
+            while (cursor.hasNext()) {
+                sum += cursor.next().getFileSize();
+            }
+            totalBytes = sum;
+        }
+        return totalBytes;
+    }
+
     public int getSnapshotId() {
         return snapshotId;
     }
 
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The snapshot time in milliseconds since the epoch (comparable with file mtimes).
+     */
+    public long getTimestampMillis() {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     public String getFormattedTimestamp() {
         return timestamp.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
     }
@@ -44,7 +176,7 @@ public class Snapshot implements Serializable {
         return "Snapshot{" +
                 "ID=" + snapshotId +
                 ", timestamp=" + getFormattedTimestamp() +
-                ", totalFiles=" + fileTree.size() +
+                ", totalFiles=" + getFileCount() +
                 '}';
     }
 }
\ No newline at end of file
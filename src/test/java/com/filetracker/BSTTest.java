@@ -1,6 +1,7 @@
 package com.filetracker;
 
 import com.filetracker.core.BST;
+import com.filetracker.core.Cursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -67,4 +68,100 @@ public class BSTTest {
         assertEquals("Bravo:B", result.get(1));
         assertEquals("Charlie:C", result.get(2));
     }
+
+    @Test
+    public void testSortedInsertionStaysBalanced() {
+        int n = 100_000;
+        for (int i = 0; i < n; i++) {
+            tree.insert(String.format("dir/file%06d.txt", i), "C" + i);
+        }
+
+        assertEquals(n, tree.size());
+        // A red-black tree is at most 2*log2(n+1) deep (~34 here); a plain BST would be n deep.
+        assertTrue(tree.height() <= 34, "height was " + tree.height());
+        assertEquals("C4242", tree.search("dir/file004242.txt"));
+
+        java.util.List<String> keys = new java.util.ArrayList<>();
+        tree.inOrderTraversal((key, value) -> keys.add(key));
+        assertEquals(n, keys.size());
+        for (int i = 1; i < n; i++) {
+            assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void testFromSortedBuildsBalancedTree() {
+        java.util.List<String> values = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(String.format("file%04d", i));
+        }
+        values.add("file0999"); // Duplicate key -> later value wins, size unchanged
+
+        BST<String> bulk = BST.fromSorted(values, v -> v);
+
+        assertEquals(1000, bulk.size());
+        assertEquals(10, bulk.height()); // ceil(log2(1001))
+        assertEquals("file0500", bulk.search("file0500"));
+
+        // Inserting after a bulk load keeps working
+        bulk.insert("file9999", "file9999");
+        assertEquals(1001, bulk.size());
+        assertEquals("file9999", bulk.search("file9999"));
+    }
+
+    @Test
+    public void testSplitKeysReturnsAtMostPartsMinusOne() {
+        java.util.List<String> values = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(String.format("file%04d", i));
+        }
+        BST<String> bulk = BST.fromSorted(values, v -> v);
+
+        for (int parts = 1; parts <= 40; parts++) {
+            java.util.List<String> keys = bulk.splitKeys(parts);
+            assertEquals(parts - 1, keys.size());
+            for (int i = 1; i < keys.size(); i++) {
+                assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+            }
+        }
+        assertTrue(new BST<String>().splitKeys(12).isEmpty());
+    }
+
+    @Test
+    public void testFromSortedFallsBackOnUnsortedInput() {
+        BST<String> unsorted = BST.fromSorted(java.util.List.of("c", "a", "b"), v -> v);
+
+        assertEquals(3, unsorted.size());
+        assertEquals("a", unsorted.search("a"));
+        java.util.List<String> keys = new java.util.ArrayList<>();
+        unsorted.inOrderTraversal((key, value) -> keys.add(key));
+        assertEquals(java.util.List.of("a", "b", "c"), keys);
+    }
+
+    @Test
+    public void testCursorIteratesInOrderAndSeeks() {
+        tree.insert("b/2.txt", "B2");
+        tree.insert("a.txt", "A");
+        tree.insert("b/1.txt", "B1");
+        tree.insert("c.txt", "C");
+
+        Cursor<String> cursor = tree.cursor();
+        assertEquals("a.txt", cursor.peekKey());
+        assertEquals("A", cursor.next());
+        assertEquals("a.txt", cursor.key());
+
+        // Seek to the first key >= "b/" and stop early once we leave the prefix
+        cursor.seek("b/");
+        java.util.List<String> underB = new java.util.ArrayList<>();
+        while (cursor.hasNext() && cursor.peekKey().startsWith("b/")) {
+            underB.add(cursor.next());
+        }
+        assertEquals(java.util.List.of("B1", "B2"), underB);
+        assertEquals("C", cursor.next());
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.peekKey());
+
+        assertFalse(tree.cursor("d").hasNext());
+        assertEquals("B2", tree.cursor("b/10").next());
+    }
 }
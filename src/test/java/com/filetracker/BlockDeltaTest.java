@@ -0,0 +1,81 @@
+package com.filetracker;
+
+import com.filetracker.core.ObjectStore;
+import com.filetracker.models.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockDeltaTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBlockDeltaStoresOnlyTheEdit() throws IOException {
+        byte[] original = new byte[400 * 1024];
+        new Random(3).nextBytes(original);
+        Path dataDir = tempDir.resolve("data");
+        Files.createDirectories(dataDir);
+        Path file = dataDir.resolve("app.db");
+        Files.write(file, original);
+
+        ObjectStore store = new ObjectStore(tempDir.resolve("objects"));
+        FileMetadata v1 = new FileMetadata(file, dataDir);
+        store.store(v1);
+        long bytesAfterV1 = store.getStoredBytes();
+
+        // v2: a few bytes overwritten in the middle and a few inserted near the start
+        byte[] v2Content = new byte[original.length + 50];
+        System.arraycopy(original, 0, v2Content, 0, 1000);
+        System.arraycopy(original, 1000, v2Content, 1050, original.length - 1000);
+        for (int i = 200_000; i < 200_100; i++) {
+            v2Content[i] ^= 0x5A;
+        }
+        Files.write(file, v2Content);
+        FileMetadata v2 = new FileMetadata(file, dataDir);
+        store.store(v2, v1);
+        assertTrue(store.getStoredBytes() - bytesAfterV1 < 16 * 1024, "an edit should cost about a block or two");
+
+        // v3 is a delta on a delta
+        byte[] v3Content = Arrays.copyOf(v2Content, v2Content.length + 10);
+        Files.write(file, v3Content);
+        FileMetadata v3 = new FileMetadata(file, dataDir);
+        store.store(v3, v2);
+
+        Path restored = tempDir.resolve("restored.db");
+        store.copyTo(v1.getFileHash(), restored);
+        assertArrayEquals(original, Files.readAllBytes(restored));
+        store.copyTo(v2.getFileHash(), restored);
+        assertArrayEquals(v2Content, Files.readAllBytes(restored));
+        store.copyTo(v3.getFileHash(), restored);
+        assertArrayEquals(v3Content, Files.readAllBytes(restored));
+    }
+
+    @Test
+    public void testUnrelatedContentIsStoredWhole() throws IOException {
+        Path dataDir = tempDir.resolve("data");
+        Files.createDirectories(dataDir);
+        Path file = dataDir.resolve("blob.bin");
+        byte[] content = new byte[64 * 1024];
+        new Random(1).nextBytes(content);
+        Files.write(file, content);
+        ObjectStore store = new ObjectStore(tempDir.resolve("objects"));
+        FileMetadata v1 = new FileMetadata(file, dataDir);
+        store.store(v1);
+
+        new Random(2).nextBytes(content); // Nothing in common with v1
+        Files.write(file, content);
+        FileMetadata v2 = new FileMetadata(file, dataDir);
+        store.store(v2, v1);
+
+        assertTrue(Files.exists(store.objectPath(v2.getFileHash())));
+    }
+}
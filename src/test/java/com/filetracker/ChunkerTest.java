@@ -0,0 +1,88 @@
+package com.filetracker;
+
+import com.filetracker.core.Chunker;
+import com.filetracker.core.ObjectStore;
+import com.filetracker.models.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> chunkHashes(Chunker chunker, byte[] content) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        chunker.split(Channels.newChannel(new ByteArrayInputStream(content)),
+                (data, offset, length) -> chunks.add(Arrays.hashCode(Arrays.copyOfRange(data, offset, offset + length)) + ":" + length));
+        return chunks;
+    }
+
+    @Test
+    public void testChunkBoundariesSurviveAnInsert() throws IOException {
+        byte[] original = new byte[256 * 1024];
+        new Random(42).nextBytes(original);
+        byte[] edited = new byte[original.length + 10];
+        System.arraycopy(original, 0, edited, 0, 100_000);
+        System.arraycopy(original, 100_000, edited, 100_010, original.length - 100_000);
+
+        Chunker chunker = new Chunker(1024);
+        List<String> before = chunkHashes(chunker, original);
+        List<String> after = chunkHashes(chunker, edited);
+
+        int total = 0;
+        for (String chunk : before) {
+            total += Integer.parseInt(chunk.substring(chunk.indexOf(':') + 1));
+            assertTrue(Integer.parseInt(chunk.substring(chunk.indexOf(':') + 1)) <= chunker.getMaxSize());
+        }
+        assertEquals(original.length, total);
+
+        Set<String> shared = new HashSet<>(before);
+        shared.retainAll(after);
+        assertTrue(shared.size() >= before.size() - 3, "only the chunks around the insert should change");
+    }
+
+    @Test
+    public void testChunkedStoreOnlyAddsChangedChunks() throws IOException {
+        byte[] content = new byte[512 * 1024];
+        new Random(7).nextBytes(content);
+        Path dataDir = tempDir.resolve("data");
+        Files.createDirectories(dataDir);
+        Path file = dataDir.resolve("dump.bin");
+        Files.write(file, content);
+
+        ObjectStore store = new ObjectStore(tempDir.resolve("objects"));
+        store.setChunker(new Chunker(1024));
+        FileMetadata first = new FileMetadata(file, dataDir);
+        assertTrue(store.store(first));
+        long bytesAfterFirst = store.getStoredBytes();
+        assertEquals(content.length, bytesAfterFirst);
+
+        // Append a little: only the last chunk(s) are new
+        Files.write(file, new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+        FileMetadata second = new FileMetadata(file, dataDir);
+        assertTrue(store.store(second));
+        assertTrue(store.getStoredBytes() - bytesAfterFirst < 20 * 1024);
+
+        Path restored = tempDir.resolve("restored.bin");
+        store.copyTo(first.getFileHash(), restored);
+        assertArrayEquals(content, Files.readAllBytes(restored));
+        store.copyTo(second.getFileHash(), restored);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(restored));
+    }
+}
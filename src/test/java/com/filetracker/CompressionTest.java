@@ -0,0 +1,294 @@
+package com.filetracker;
+
+import com.filetracker.core.Compression;
+import com.filetracker.core.Compression.Delta;
+import com.filetracker.core.Cursor;
+import com.filetracker.core.DiffEngine;
+import com.filetracker.core.MappedSnapshot;
+import com.filetracker.core.SnapshotCodec;
+import com.filetracker.core.SnapshotManager;
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static com.filetracker.Fixtures.file;
+import static com.filetracker.Fixtures.sha;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Compression compression;
+    private DiffEngine diffEngine;
+    private Snapshot snap1, snap2, snap3;
+
+    @BeforeEach
+    public void setUp() {
+        compression = new Compression();
+        diffEngine = new DiffEngine();
+
+        snap1 = new Snapshot(1);
+        snap1.addFile(file("a.txt", "a1"));
+        snap1.addFile(file("b.txt", "b1"));
+        snap1.addFile(file("c.txt", "c1"));
+
+        snap2 = new Snapshot(2);
+        snap2.addFile(file("a.txt", "a2"));   // updated
+        snap2.addFile(file("c.txt", "c1"));   // b.txt deleted
+        snap2.addFile(file("d.txt", "d1"));   // added
+
+        snap3 = new Snapshot(3);
+        snap3.addFile(file("a.txt", "a2"));
+        snap3.addFile(file("b.txt", "b3"));   // re-added
+        snap3.addFile(file("c.txt", "c1"));   // d.txt deleted again
+    }
+
+    @Test
+    public void testApplyDeltaReconstructsSnapshot() {
+        Delta delta = compression.createDelta(snap1, snap2);
+
+        assertEquals(1, delta.addedFiles.size());
+        assertEquals(1, delta.deletedFilePaths.size());
+        assertEquals(1, delta.updatedFiles.size());
+
+        Snapshot rebuilt = compression.applyDelta(snap1, delta);
+        assertEquals(2, rebuilt.getSnapshotId());
+        assertEquals(3, rebuilt.getFileTree().size());
+        assertTrue(diffEngine.compareChanges(snap2, rebuilt).isEmpty());
+    }
+
+    @Test
+    public void testApplyDeltasInOnePass() {
+        Delta delta2 = compression.createDelta(snap1, snap2);
+        Delta delta3 = compression.createDelta(snap2, snap3);
+
+        Snapshot rebuilt = compression.applyDeltas(snap1, List.of(delta2, delta3));
+
+        assertEquals(3, rebuilt.getSnapshotId());
+        assertEquals(3, rebuilt.getFileTree().size());
+        assertNull(rebuilt.getFileTree().search("d.txt"));
+        assertEquals("b3", rebuilt.getFileTree().search("b.txt").getFileHash());
+        assertTrue(diffEngine.compareChanges(snap3, rebuilt).isEmpty());
+    }
+
+    @Test
+    public void testSnapshotCodecRoundTrip() throws IOException {
+        Snapshot original = new Snapshot(7, "/data/root");
+        for (int i = 0; i < 200; i++) { // Several blocks
+            String path = "dir" + (i % 5) + "/file_" + i + ".txt";
+            original.addFile(new FileMetadata(path, "/data/root/" + path, i * 1000L, 1_700_000_000_000L - i * 37L, sha(i)));
+        }
+        original.addFile(new FileMetadata("elsewhere.txt", "/other/elsewhere.txt", 0L, 0L, sha(999)));
+
+        Path file = tempDir.resolve("snapshot.bin");
+        SnapshotCodec.writeSnapshot(original, file);
+        Snapshot read = SnapshotCodec.readSnapshot(file);
+
+        assertEquals(7, read.getSnapshotId());
+        assertEquals("/data/root", read.getRootPath());
+        assertEquals(original.getTimestamp(), read.getTimestamp());
+        assertEquals(201, read.getFileTree().size());
+        assertTrue(diffEngine.compareChanges(original, read).isEmpty());
+
+        FileMetadata moved = read.getFileTree().search("elsewhere.txt");
+        assertEquals("/other/elsewhere.txt", moved.getAbsolutePath());
+        FileMetadata sample = read.getFileTree().search("dir3/file_123.txt");
+        assertEquals(123000L, sample.getFileSize());
+        assertEquals(1_700_000_000_000L - 123 * 37L, sample.getLastModified());
+        assertEquals(sha(123), sample.getFileHash());
+    }
+
+    @Test
+    public void testCodecRejectsForeignFiles() throws IOException {
+        Path file = tempDir.resolve("garbage.bin");
+        Files.write(file, new byte[100]);
+        assertThrows(IOException.class, () -> SnapshotCodec.readSnapshot(file));
+        assertThrows(IOException.class, () -> SnapshotCodec.readDelta(file));
+    }
+
+    @Test
+    public void testCompressAndDecompressFromDisk() throws IOException {
+        Path data = tempDir.resolve("data");
+        Path storage = tempDir.resolve("storage");
+        Files.createDirectories(data.resolve("sub"));
+        Files.writeString(data.resolve("a.txt"), "one");
+        Files.writeString(data.resolve("sub/b.txt"), "two");
+
+        SnapshotManager manager = new SnapshotManager();
+        Snapshot first = manager.takeSnapshot(data.toString());
+        compression.compressSnapshot(manager, first, storage.toString());
+
+        Files.writeString(data.resolve("a.txt"), "one, changed");
+        Files.delete(data.resolve("sub/b.txt"));
+        Files.writeString(data.resolve("c.txt"), "three");
+        Snapshot second = manager.takeSnapshot(data.toString());
+        compression.setKeyframeSizeRatio(1000); // Keep the second one as a delta only
+        compression.compressSnapshot(manager, second, storage.toString());
+
+        Snapshot firstRead = compression.decompressSnapshot(1, storage.toString());
+        Snapshot secondRead = compression.decompressSnapshot(2, storage.toString());
+        assertTrue(diffEngine.compareChanges(first, firstRead).isEmpty());
+        assertTrue(diffEngine.compareChanges(second, secondRead).isEmpty());
+        assertEquals(data.resolve("c.txt").toString(), secondRead.getFileTree().search("c.txt").getAbsolutePath());
+    }
+
+    @Test
+    public void testMappedSnapshotMatchesHeapSnapshot() throws IOException {
+        Snapshot original = new Snapshot(4, "/data/root");
+        for (int i = 0; i < 500; i += 2) { // Even numbers only, so odd ones are misses
+            String path = String.format("d%d/f%04d", i % 7, i);
+            original.addFile(new FileMetadata(path, "/data/root/" + path, i, 1000L + i, sha(i)));
+        }
+        Path file = tempDir.resolve("mapped.bin");
+        SnapshotCodec.writeSnapshot(original, file);
+        MappedSnapshot mapped = MappedSnapshot.open(file);
+
+        assertEquals(original.getFileTree().size(), mapped.getFileTree().size());
+        assertEquals(original.getTimestamp(), mapped.getTimestamp());
+        assertTrue(diffEngine.compareChanges(original, mapped).isEmpty());
+        assertEquals(original.getDirectoryHashes(), mapped.getDirectoryHashes());
+
+        for (int i = 0; i < 500; i++) {
+            String path = String.format("d%d/f%04d", i % 7, i);
+            FileMetadata found = mapped.getFileTree().search(path);
+            if (i % 2 == 0) {
+                assertEquals(sha(i), found.getFileHash());
+                assertEquals(1000L + i, found.getLastModified());
+            } else {
+                assertNull(found);
+            }
+            // A cursor seeked to any key lands where the heap tree's cursor does
+            Cursor<FileMetadata> expected = original.getFileTree().cursor(path);
+            Cursor<FileMetadata> actual = mapped.getFileTree().cursor(path);
+            assertEquals(expected.peekKey(), actual.peekKey());
+        }
+        assertNull(mapped.getFileTree().search(""));
+        assertNull(mapped.getFileTree().search("zzz"));
+        assertFalse(mapped.getFileTree().cursor("zzz").hasNext());
+        assertThrows(UnsupportedOperationException.class,
+                () -> mapped.addFile(new FileMetadata("x", "/x", 0L, 0L, sha(1))));
+    }
+
+    @Test
+    public void testDirectoryHashesAreReadFromTheFile() throws IOException {
+        Map<String, String> stored = Map.of("", sha(7), "docs", sha(8));
+        Snapshot original = new Snapshot(5, "/data/root") {
+            @Override
+            public Map<String, String> getDirectoryHashes() {
+                return stored; // Not what the files hash to, so a recomputed map would differ
+            }
+        };
+        original.addFile(new FileMetadata("docs/a.txt", "/data/root/docs/a.txt", 1, 1L, sha(1)));
+        Path file = tempDir.resolve("hashes.bin");
+        SnapshotCodec.writeSnapshot(original, file);
+
+        assertEquals(stored, MappedSnapshot.open(file).getDirectoryHashes());
+    }
+
+    @Test
+    public void testMappedEmptySnapshot() throws IOException {
+        Path file = tempDir.resolve("empty.bin");
+        SnapshotCodec.writeSnapshot(new Snapshot(1), file);
+        MappedSnapshot mapped = MappedSnapshot.open(file);
+
+        assertTrue(mapped.getFileTree().isEmpty());
+        assertNull(mapped.getFileTree().search("a"));
+        assertFalse(mapped.getFileTree().cursor().hasNext());
+    }
+
+    @Test
+    public void testMovesSurviveDeltaStorage() throws IOException {
+        Snapshot before = new Snapshot(1, "/data/root");
+        Snapshot after = new Snapshot(2, "/data/root");
+        before.addFile(new FileMetadata("a.txt", "/data/root/a.txt", 10L, 5L, sha(1)));
+        before.addFile(new FileMetadata("b.txt", "/data/root/b.txt", 10L, 5L, sha(2)));
+        after.addFile(new FileMetadata("x/a.txt", "/data/root/x/a.txt", 10L, 5L, sha(1))); // a.txt -> x/a.txt
+        after.addFile(new FileMetadata("c/b.txt", "/data/root/c/b.txt", 10L, 7L, sha(2))); // b.txt -> c/b.txt
+
+        Delta delta = compression.createDelta(before, after);
+        assertEquals(2, delta.movedFiles.size());
+        assertTrue(delta.addedFiles.isEmpty());
+        assertTrue(delta.deletedFilePaths.isEmpty());
+
+        Path file = tempDir.resolve("delta.bin");
+        SnapshotCodec.writeDelta(delta, file);
+        Delta read = SnapshotCodec.readDelta(file);
+        assertEquals(2, read.movedFiles.size());
+        assertEquals("b.txt", read.movedFiles.get(0).fromPath); // Ordered by new path: c/b.txt first
+        assertEquals("c/b.txt", read.movedFiles.get(0).file.getFilePath());
+
+        Snapshot rebuilt = compression.applyDelta(before, read);
+        assertTrue(diffEngine.compareChanges(after, rebuilt).isEmpty());
+    }
+
+    @Test
+    public void testRangeDiffComposesStoredDeltas() throws IOException {
+        Path data = tempDir.resolve("data");
+        Path storage = tempDir.resolve("storage");
+        Files.createDirectories(data);
+        Files.writeString(data.resolve("a.txt"), "one");
+        Files.writeString(data.resolve("b.txt"), "bee content");
+        Files.writeString(data.resolve("keep.txt"), "kept");
+
+        SnapshotManager manager = new SnapshotManager();
+        compression.setKeyframeSizeRatio(1000); // Deltas only after the first snapshot
+        Snapshot first = manager.takeSnapshot(data.toString());
+        compression.compressSnapshot(manager, first, storage.toString());
+
+        Files.writeString(data.resolve("a.txt"), "one, changed");
+        Files.writeString(data.resolve("tmp.txt"), "temporary");
+        Files.createDirectories(data.resolve("sub"));
+        Files.move(data.resolve("b.txt"), data.resolve("sub/b.txt"));
+        compression.compressSnapshot(manager, manager.takeSnapshot(data.toString()), storage.toString());
+
+        Files.writeString(data.resolve("a.txt"), "one"); // Changed back
+        Files.delete(data.resolve("tmp.txt"));            // Added, then deleted
+        compression.compressSnapshot(manager, manager.takeSnapshot(data.toString()), storage.toString());
+
+        Files.writeString(data.resolve("c.txt"), "sea");
+        Snapshot last = manager.takeSnapshot(data.toString());
+        compression.compressSnapshot(manager, last, storage.toString());
+
+        List<DiffEngine.DiffResult> range = compression.diffRange(1, 4, storage.toString());
+        List<DiffEngine.DiffResult> direct = diffEngine.compareWithMoves(first, last);
+        assertEquals(2, range.size());
+        assertEquals(direct.size(), range.size());
+        for (int i = 0; i < range.size(); i++) {
+            assertEquals(direct.get(i).getChangeType(), range.get(i).getChangeType());
+            assertEquals(direct.get(i).getFilePath(), range.get(i).getFilePath());
+        }
+        assertEquals(DiffEngine.DiffResult.ChangeType.MOVED, range.get(1).getChangeType());
+        assertEquals("b.txt", range.get(1).getOldFilePath());
+
+        assertTrue(compression.diffRange(3, 3, storage.toString()).isEmpty());
+    }
+
+    @Test
+    public void testRangeDiffRejectsDeltaThatDoesNotMatchTheSnapshot() throws IOException {
+        Path data = tempDir.resolve("data");
+        Path storage = tempDir.resolve("storage");
+        Files.createDirectories(data);
+        Files.writeString(data.resolve("a.txt"), "one");
+        SnapshotManager manager = new SnapshotManager();
+        compression.compressSnapshot(manager, manager.takeSnapshot(data.toString()), storage.toString());
+
+        // A stale delta (without previous versions) deleting a file snapshot #1 never had
+        Delta stale = new Delta();
+        stale.rootPath = data.toString();
+        stale.deletedFilePaths.add("ghost.txt");
+        compression.serializeDelta(stale, storage.resolve("delta_2.dat").toString());
+
+        IOException error = assertThrows(IOException.class, () -> compression.diffRange(1, 2, storage.toString()));
+        assertTrue(error.getMessage().contains("ghost.txt"));
+    }
+}
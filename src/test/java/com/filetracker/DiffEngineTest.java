@@ -1,4 +1,219 @@
 package com.filetracker;
 
+import com.filetracker.core.DiffEngine;
+import com.filetracker.core.DiffEngine.DiffResult;
+import com.filetracker.core.MappedSnapshot;
+import com.filetracker.core.SnapshotCodec;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static com.filetracker.Fixtures.file;
+import static com.filetracker.Fixtures.sha;
+import static org.junit.jupiter.api.Assertions.*;
+
 public class DiffEngineTest {
+
+    private DiffEngine diffEngine;
+    private Snapshot older;
+    private Snapshot newer;
+
+    @BeforeEach
+    public void setUp() {
+        diffEngine = new DiffEngine();
+        older = new Snapshot(1);
+        newer = new Snapshot(2);
+
+        older.addFile(file("README.md", "r1"));
+        older.addFile(file("src/Main.java", "m1"));
+        older.addFile(file("src/Old.java", "o1"));
+        older.addFile(file("src-old/Legacy.java", "l1"));
+
+        newer.addFile(file("README.md", "r1"));
+        newer.addFile(file("src/Main.java", "m2"));
+        newer.addFile(file("src/New.java", "n1"));
+        newer.addFile(file("src-old/Legacy.java", "l2"));
+    }
+
+    @Test
+    public void testCompareClassifiesChanges() {
+        List<DiffResult> results = diffEngine.compare(older, newer);
+
+        assertEquals(5, results.size());
+        assertEquals(DiffResult.ChangeType.UNCHANGED, results.get(0).getChangeType()); // README.md
+        assertEquals(DiffResult.ChangeType.UPDATED, results.get(1).getChangeType());   // src-old/Legacy.java
+        assertEquals(DiffResult.ChangeType.UPDATED, results.get(2).getChangeType());   // src/Main.java
+        assertEquals(DiffResult.ChangeType.ADDED, results.get(3).getChangeType());     // src/New.java
+        assertEquals(DiffResult.ChangeType.DELETED, results.get(4).getChangeType());   // src/Old.java
+    }
+
+    @Test
+    public void testCompareDirectoryOnlyVisitsThatDirectory() {
+        List<DiffResult> results = diffEngine.compare(older, newer, "src");
+
+        assertEquals(3, results.size()); // src-old/ is not under src/
+        for (DiffResult result : results) {
+            assertTrue(result.getFilePath().startsWith("src" + File.separator));
+        }
+    }
+
+    @Test
+    public void testCompareWithNullSnapshotReportsAllAdded() {
+        List<DiffResult> results = diffEngine.compare(null, newer);
+
+        assertEquals(4, results.size());
+        for (DiffResult result : results) {
+            assertEquals(DiffResult.ChangeType.ADDED, result.getChangeType());
+        }
+    }
+
+    @Test
+    public void testCompareChangesMatchesFullCompare() {
+        // Add an unchanged subtree that the Merkle hashes let us skip
+        for (int i = 0; i < 100; i++) {
+            older.addFile(file("lib/pkg/File" + i + ".java", "h" + i));
+            newer.addFile(file("lib/pkg/File" + i + ".java", "h" + i));
+        }
+
+        List<DiffResult> changes = diffEngine.compareChanges(older, newer);
+        List<DiffResult> full = diffEngine.compare(older, newer);
+        full.removeIf(result -> result.getChangeType() == DiffResult.ChangeType.UNCHANGED);
+
+        assertEquals(full.size(), changes.size());
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.get(i).getFilePath(), changes.get(i).getFilePath());
+            assertEquals(full.get(i).getChangeType(), changes.get(i).getChangeType());
+        }
+    }
+
+    @Test
+    public void testDirectoryHashesDetectChanges() {
+        assertNotEquals(older.getDirectoryHashes().get(""), newer.getDirectoryHashes().get(""));
+        assertNotEquals(older.getDirectoryHashes().get("src"), newer.getDirectoryHashes().get("src"));
+
+        Snapshot copy = new Snapshot(3);
+        copy.addFile(file("README.md", "r1"));
+        copy.addFile(file("src/Main.java", "m2"));
+        copy.addFile(file("src/New.java", "n1"));
+        copy.addFile(file("src-old/Legacy.java", "l2"));
+        assertEquals(newer.getDirectoryHashes().get(""), copy.getDirectoryHashes().get(""));
+        assertTrue(diffEngine.compareChanges(newer, copy).isEmpty());
+    }
+
+    @Test
+    public void testRenamedDirectoryIsReportedAsMoves() {
+        Snapshot before = new Snapshot(1);
+        Snapshot after = new Snapshot(2);
+        for (int i = 0; i < 3; i++) {
+            before.addFile(file("old/File" + i + ".java", "c" + i));
+            after.addFile(file("new/File" + i + ".java", "c" + i));
+        }
+        before.addFile(file("gone.txt", "g1"));
+        after.addFile(file("fresh.txt", "f1"));
+        after.addFile(file("old-copy/File0.java", "c0")); // Second copy of moved content
+
+        List<DiffResult> changes = diffEngine.compareWithMoves(before, after);
+
+        assertEquals(6, changes.size());
+        int moved = 0;
+        for (DiffResult change : changes) {
+            if (change.getChangeType() == DiffResult.ChangeType.MOVED) {
+                moved++;
+                assertEquals(change.getOldFilePath().replace("old", "new"), change.getFilePath());
+            }
+        }
+        assertEquals(3, moved);
+        assertEquals(DiffResult.ChangeType.ADDED, changes.get(0).getChangeType());   // fresh.txt
+        assertEquals(DiffResult.ChangeType.DELETED, changes.get(1).getChangeType()); // gone.txt
+        assertEquals(DiffResult.ChangeType.COPIED, changes.get(5).getChangeType());  // old-copy/File0.java
+    }
+
+    @Test
+    public void testStreamingDiffWithFiltersAndLimit() {
+        DiffEngine.DiffOptions srcOnly = new DiffEngine.DiffOptions().directory("src");
+        List<String> paths = diffEngine.stream(older, newer, srcOnly)
+                .map(DiffResult::getFilePath).collect(Collectors.toList());
+        assertEquals(List.of(path("src/Main.java"), path("src/New.java"), path("src/Old.java")), paths);
+
+        List<DiffResult> added = diffEngine.stream(older, newer,
+                new DiffEngine.DiffOptions().types(DiffResult.ChangeType.ADDED)).collect(Collectors.toList());
+        assertEquals(1, added.size());
+        assertEquals(path("src/New.java"), added.get(0).getFilePath());
+
+        Iterator<DiffResult> first = diffEngine.iterate(older, newer, new DiffEngine.DiffOptions().limit(1));
+        assertTrue(first.hasNext());
+        assertEquals(diffEngine.compareChanges(older, newer).get(0).getFilePath(), first.next().getFilePath());
+        assertFalse(first.hasNext());
+
+        assertTrue(diffEngine.hasChanges(older, newer));
+        assertTrue(diffEngine.hasChanges(older, newer, "src-old"));
+        assertFalse(diffEngine.hasChanges(newer, newer));
+        assertFalse(diffEngine.hasChanges(older, newer, "docs"));
+    }
+
+    private static String path(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    @Test
+    public void testParallelDiffMatchesSequential() throws IOException {
+        Snapshot big = new Snapshot(1);
+        Snapshot changed = new Snapshot(2);
+        for (int i = 0; i < 30_000; i++) {
+            String path = "dir" + (i % 37) + "/sub" + (i % 5) + "/file" + i + ".txt";
+            big.addFile(file(path, sha(i)));
+            if (i % 1000 == 0) {
+                changed.addFile(file(path, sha(1_000_000 + i)));
+            } else if (i % 777 != 0) {
+                changed.addFile(file(path, sha(i)));
+            }
+        }
+        changed.addFile(file("dir3/extra.txt", sha(2_000_000)));
+
+        List<DiffResult> sequential = diffEngine.compareChanges(big, changed);
+        assertFalse(sequential.isEmpty());
+        assertSameResults(sequential, diffEngine.compareParallel(big, changed));
+
+        // A pool of its own, so the ranges are split even on a single-core machine
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DiffEngine.DiffOptions all = new DiffEngine.DiffOptions();
+            assertSameResults(sequential, diffEngine.compareParallel(big, changed, all, pool));
+
+            // Split keys taken from the block index of stored snapshots
+            Snapshot mappedBig = MappedSnapshot.wrap(ByteBuffer.wrap(SnapshotCodec.encodeSnapshot(big)), "big");
+            Snapshot mappedChanged = MappedSnapshot.wrap(ByteBuffer.wrap(SnapshotCodec.encodeSnapshot(changed)), "changed");
+            assertSameResults(sequential, diffEngine.compareParallel(mappedBig, mappedChanged, all, pool));
+
+            DiffEngine.DiffOptions options = new DiffEngine.DiffOptions().directory("dir3").includeUnchanged();
+            assertSameResults(collectAll(diffEngine.iterate(big, changed, options)),
+                    diffEngine.compareParallel(big, changed, options, pool));
+            assertSameResults(sequential.subList(0, 5), diffEngine.compareParallel(big, changed, new DiffEngine.DiffOptions().limit(5), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<DiffResult> collectAll(Iterator<DiffResult> results) {
+        List<DiffResult> list = new ArrayList<>();
+        results.forEachRemaining(list::add);
+        return list;
+    }
+
+    private static void assertSameResults(List<DiffResult> expected, List<DiffResult> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getFilePath(), actual.get(i).getFilePath());
+            assertEquals(expected.get(i).getChangeType(), actual.get(i).getChangeType());
+        }
+    }
 }
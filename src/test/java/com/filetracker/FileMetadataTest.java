@@ -0,0 +1,63 @@
+package com.filetracker;
+
+import com.filetracker.core.Cursor;
+import com.filetracker.core.MappedSnapshot;
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static com.filetracker.Fixtures.sha;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileMetadataTest {
+
+    @Test
+    public void testHashIsKeptAsRawBytes() {
+        FileMetadata file = new FileMetadata("a.txt", "/data/root/a.txt", 1, 1L, sha(1));
+        assertEquals(sha(1), file.getFileHash());
+        assertEquals(32, file.getHashBytes().length);
+        file.getHashBytes()[0] ^= 1; // A copy: the metadata does not change
+        assertEquals(sha(1), file.getFileHash());
+
+        assertTrue(file.hasSameContent(new FileMetadata("b.txt", "/data/root/b.txt", 1, 1L, sha(1))));
+        assertFalse(file.hasSameContent(new FileMetadata("a.txt", "/data/root/a.txt", 1, 1L, sha(2))));
+
+        // The compact form derives the absolute path from the shared base path
+        FileMetadata stored = new FileMetadata("docs/a.txt", "/data/root", null, 1, 1L, file.getHashBytes());
+        assertEquals(Paths.get("/data/root").resolve("docs/a.txt").toString(), stored.getAbsolutePath());
+        assertEquals(sha(1), stored.getFileHash());
+
+        // Hashes that are not SHA-256 hex are kept as they are
+        FileMetadata plain = new FileMetadata("a", "/data/root/a", 1, 1L, "h1");
+        assertEquals("h1", plain.getFileHash());
+        assertTrue(plain.hasSameContent(new FileMetadata("b", "/data/root/b", 1, 1L, "h1")));
+        assertFalse(plain.hasSameContent(file));
+    }
+
+    @Test
+    public void testCompactSnapshotKeepsEveryField() throws IOException {
+        Snapshot original = new Snapshot(10, "/data/root");
+        for (int i = 0; i < 200; i++) {
+            original.addFile(new FileMetadata("dir" + (i % 4) + "/file" + i, "/data/root/dir" + (i % 4) + "/file" + i, i, 1000L + i, sha(i)));
+        }
+        original.addFile(new FileMetadata("outside", "/elsewhere/outside", 5, 1L, sha(500)));
+
+        MappedSnapshot compact = MappedSnapshot.compact(original);
+        assertEquals(original.getFileCount(), compact.getFileCount());
+        Cursor<FileMetadata> cursor = original.getFileTree().cursor();
+        while (cursor.hasNext()) {
+            FileMetadata file = cursor.next();
+            FileMetadata copy = compact.getFileTree().search(file.getFilePath());
+            assertEquals(file.getAbsolutePath(), copy.getAbsolutePath());
+            assertEquals(file.getFileHash(), copy.getFileHash());
+            assertEquals(file.getFileSize(), copy.getFileSize());
+            assertEquals(file.getLastModified(), copy.getLastModified());
+            assertTrue(file.hasSameContent(copy));
+        }
+        assertEquals(original.getDirectoryHashes(), compact.getDirectoryHashes());
+        assertFalse(compact.getFileTree().search("dir0/file0").hasSameContent(compact.getFileTree().search("dir1/file1")));
+    }
+}
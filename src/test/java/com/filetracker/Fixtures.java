@@ -0,0 +1,41 @@
+package com.filetracker;
+
+import com.filetracker.models.FileMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Files and hashes shared by the tests.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return A well-formed SHA-256 hex string (as the snapshot codec requires), different for every n.
+     */
+    static String sha(int n) {
+        return String.format("%064x", n);
+    }
+
+    /**
+     * @return The metadata of a file under "/base"; '/' in the path becomes the platform separator.
+     */
+    static FileMetadata file(String path, String hash) {
+        String relative = path.replace('/', File.separatorChar);
+        return new FileMetadata(relative, "/base/" + relative, hash.length(), 0L, hash);
+    }
+
+    /**
+     * Writes a file under a directory, creating its parent directories.
+     */
+    static void writeFile(Path directory, String relativePath, String content) throws IOException {
+        Path file = directory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -4,6 +4,8 @@ import com.filetracker.core.LinkedList;
 import com.filetracker.models.Snapshot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LinkedListTest {
@@ -81,4 +83,44 @@ public class LinkedListTest {
         list.append(snap3);
         assertEquals(snap2, list.getSecondLast());
     }
+
+    @Test
+    public void testGetById() {
+        list.append(snap1);
+        list.append(snap2);
+        list.append(snap3);
+
+        assertEquals(snap2, list.getById(2));
+        assertEquals(snap3, list.getById(3));
+        assertNull(list.getById(4));
+    }
+
+    @Test
+    public void testGetAsOf() {
+        LocalDateTime noon = LocalDateTime.of(2026, 10, 1, 12, 0);
+        Snapshot morning = new Snapshot(1, null, noon.minusHours(3));
+        Snapshot lunch = new Snapshot(2, null, noon);
+        Snapshot evening = new Snapshot(3, null, noon.plusHours(6));
+        list.append(morning);
+        list.append(lunch);
+        list.append(evening);
+
+        assertNull(list.getAsOf(noon.minusDays(1)));
+        assertEquals(morning, list.getAsOf(noon.minusHours(1)));
+        assertEquals(lunch, list.getAsOf(noon));
+        assertEquals(lunch, list.getAsOf(noon.plusHours(5)));
+        assertEquals(evening, list.getAsOf(noon.plusDays(1)));
+    }
+
+    @Test
+    public void testManyAppendsKeepOrder() {
+        for (int i = 1; i <= 1000; i++) {
+            list.append(new Snapshot(i));
+        }
+
+        assertEquals(1000, list.size());
+        assertEquals(500, list.get(499).getSnapshotId());
+        assertEquals(999, list.getSecondLast().getSnapshotId());
+        assertEquals(1000, list.getLast().getSnapshotId());
+    }
 }
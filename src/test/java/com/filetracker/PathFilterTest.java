@@ -0,0 +1,46 @@
+package com.filetracker;
+
+import com.filetracker.core.MappedSnapshot;
+import com.filetracker.core.SnapshotCodec;
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.filetracker.Fixtures.sha;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testPathFilterIsStoredWithTheSnapshot() throws IOException {
+        Snapshot original = new Snapshot(9, "/data/root");
+        for (int i = 0; i < 1000; i++) {
+            original.addFile(new FileMetadata("dir" + (i % 10) + "/file" + i, "/data/root/dir" + (i % 10) + "/file" + i, i, 0L, sha(i)));
+        }
+        Path file = tempDir.resolve("filtered.snap");
+        SnapshotCodec.writeSnapshot(original, file);
+        MappedSnapshot mapped = MappedSnapshot.open(file);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            String path = "dir" + (i % 10) + "/file" + i;
+            assertTrue(mapped.getPathFilter().mightContain(path));
+            assertTrue(mapped.containsPath(path));
+            String absent = "dir" + (i % 10) + "/other" + i;
+            assertEquals(original.getPathFilter().mightContain(absent), mapped.getPathFilter().mightContain(absent));
+            if (mapped.getPathFilter().mightContain(absent)) {
+                falsePositives++;
+            }
+            assertFalse(mapped.containsPath(absent));
+        }
+        assertTrue(falsePositives < 30, "about 1% false positives expected, got " + falsePositives);
+        assertEquals(1256, mapped.getPathFilter().sizeInBytes()); // 10 bits per path, in whole 64-bit words
+    }
+}
@@ -1,4 +1,199 @@
 package com.filetracker;
 
+import com.filetracker.core.Cursor;
+import com.filetracker.core.ObjectStore;
+import com.filetracker.core.Restore;
+import com.filetracker.core.RestoreExecutor;
+import com.filetracker.core.SnapshotManager;
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static com.filetracker.Fixtures.writeFile;
+import static org.junit.jupiter.api.Assertions.*;
+
 public class RestoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRestoreUsesHistoricalContent() throws IOException {
+        writeFile(tempDir, "data/a.txt", "version 1");
+        writeFile(tempDir, "data/sub/b.txt", "bee");
+        Path dataDir = tempDir.resolve("data");
+
+        SnapshotManager manager = new SnapshotManager(tempDir.resolve("storage").toString());
+        Snapshot snapshot = manager.takeSnapshot(dataDir.toString());
+
+        writeFile(tempDir, "data/a.txt", "version 2, longer");
+        Files.delete(dataDir.resolve("sub/b.txt"));
+        writeFile(tempDir, "data/c.txt", "new file");
+
+        new Restore(manager.getObjectStore()).restoreSnapshot(dataDir.toString(), snapshot);
+        manager.close();
+
+        assertEquals("version 1", Files.readString(dataDir.resolve("a.txt")));
+        assertEquals("bee", Files.readString(dataDir.resolve("sub/b.txt")));
+        assertFalse(Files.exists(dataDir.resolve("c.txt")));
+    }
+
+    @Test
+    public void testObjectStoreDeduplicatesContent() throws IOException {
+        writeFile(tempDir, "data/one.txt", "same content");
+        writeFile(tempDir, "data/two.txt", "same content");
+        writeFile(tempDir, "data/three.txt", "other content");
+
+        SnapshotManager manager = new SnapshotManager(tempDir.resolve("storage").toString());
+        Snapshot first = manager.takeSnapshot(tempDir.resolve("data").toString());
+        ObjectStore store = manager.getObjectStore();
+        assertEquals(2, store.getStoredCount());
+
+        manager.takeSnapshot(tempDir.resolve("data").toString()); // Nothing new to store
+        assertEquals(2, store.getStoredCount());
+        manager.close();
+
+        String hash = first.getFileTree().search("one.txt").getFileHash();
+        assertTrue(store.contains(hash));
+        assertEquals(hash.substring(0, 2), store.objectPath(hash).getParent().getFileName().toString());
+        assertEquals("same content", Files.readString(store.objectPath(hash)));
+    }
+
+    @Test
+    public void testSnapshotStoresNewAndModifiedContentOnWorkers() throws IOException {
+        for (int i = 0; i < 40; i++) {
+            writeFile(tempDir, "data/dir" + (i % 4) + "/f" + i + ".txt", "content " + i);
+        }
+        Path dataDir = tempDir.resolve("data");
+
+        SnapshotManager manager = new SnapshotManager(tempDir.resolve("storage").toString());
+        manager.setScanWorkers(4);
+        manager.takeSnapshot(dataDir.toString());
+        ObjectStore store = manager.getObjectStore();
+        assertEquals(40, store.getStoredCount());
+
+        writeFile(tempDir, "data/dir1/f1.txt", "content 1, modified");
+        writeFile(tempDir, "data/dir2/new.txt", "a new file");
+        Snapshot second = manager.takeSnapshot(dataDir.toString());
+        assertEquals(42, store.getStoredCount()); // Only the two changed files were stored
+        manager.close();
+
+        Cursor<FileMetadata> cursor = second.getFileTree().cursor();
+        while (cursor.hasNext()) {
+            assertTrue(store.contains(cursor.next().getFileHash()));
+        }
+    }
+
+    @Test
+    public void testRestoreMovesRenamedFilesBack() throws IOException {
+        writeFile(tempDir, "data/docs/guide.txt", "a guide worth keeping");
+        Path dataDir = tempDir.resolve("data");
+        Snapshot snapshot = new SnapshotManager().takeSnapshot(dataDir.toString());
+
+        Files.move(dataDir.resolve("docs"), dataDir.resolve("manual"));
+
+        // No object store and the original path is gone: only the rename can bring it back
+        new Restore().restoreSnapshot(dataDir.toString(), snapshot);
+
+        assertEquals("a guide worth keeping", Files.readString(dataDir.resolve("docs/guide.txt")));
+        assertFalse(Files.exists(dataDir.resolve("manual/guide.txt")));
+    }
+
+    @Test
+    public void testRestoreWithoutStoredContentLeavesChangedFilesAlone() throws IOException {
+        writeFile(tempDir, "data/a.txt", "aaaa");
+        writeFile(tempDir, "data/b.txt", "bbbb");
+        Path dataDir = tempDir.resolve("data");
+        Snapshot snapshot = new SnapshotManager().takeSnapshot(dataDir.toString());
+        long snapshotMtime = snapshot.getFileTree().search("a.txt").getLastModified();
+
+        writeFile(tempDir, "data/a.txt", "cccc"); // Same size, other content
+        Files.setLastModifiedTime(dataDir.resolve("a.txt"), FileTime.fromMillis(snapshotMtime + 60_000));
+
+        // No object store: the snapshot's "aaaa" is gone, so a.txt must keep its content and mtime
+        new Restore().restoreSnapshot(dataDir.toString(), snapshot);
+        assertEquals("cccc", Files.readString(dataDir.resolve("a.txt")));
+        assertEquals(snapshotMtime + 60_000, Files.getLastModifiedTime(dataDir.resolve("a.txt")).toMillis());
+
+        // Into another directory, the unchanged original can still be copied
+        Path target = tempDir.resolve("target");
+        Files.createDirectories(target);
+        new Restore().restoreSnapshot(target.toString(), snapshot);
+        assertEquals("bbbb", Files.readString(target.resolve("b.txt")));
+        assertFalse(Files.exists(target.resolve("a.txt")));
+    }
+
+    @Test
+    public void testRestoreOnlyRewritesChangedFiles() throws IOException {
+        writeFile(tempDir, "data/same.txt", "unchanged");
+        writeFile(tempDir, "data/touched.txt", "same bytes");
+        writeFile(tempDir, "data/edited.txt", "original");
+        Path dataDir = tempDir.resolve("data");
+        SnapshotManager manager = new SnapshotManager(tempDir.resolve("storage").toString());
+        Snapshot snapshot = manager.takeSnapshot(dataDir.toString());
+        FileMetadata same = snapshot.getFileTree().search("same.txt");
+        FileMetadata touched = snapshot.getFileTree().search("touched.txt");
+
+        // Same size and mtime: trusted without reading, so even a sneaky edit is left alone
+        writeFile(tempDir, "data/same.txt", "UNCHANGED");
+        Files.setLastModifiedTime(dataDir.resolve("same.txt"), FileTime.fromMillis(same.getLastModified()));
+        // Only the mtime changed: the hash matches, so just the mtime is put back
+        Files.setLastModifiedTime(dataDir.resolve("touched.txt"), FileTime.fromMillis(touched.getLastModified() + 60_000));
+        writeFile(tempDir, "data/edited.txt", "modified"); // Same size, other content
+
+        new Restore(manager.getObjectStore()).restoreSnapshot(dataDir.toString(), snapshot);
+        manager.close();
+
+        assertEquals("UNCHANGED", Files.readString(dataDir.resolve("same.txt")));
+        assertEquals("same bytes", Files.readString(dataDir.resolve("touched.txt")));
+        assertEquals(touched.getLastModified(), Files.getLastModifiedTime(dataDir.resolve("touched.txt")).toMillis());
+        assertEquals("original", Files.readString(dataDir.resolve("edited.txt")));
+        assertEquals(snapshot.getFileTree().search("edited.txt").getLastModified(),
+                Files.getLastModifiedTime(dataDir.resolve("edited.txt")).toMillis());
+    }
+
+    @Test
+    public void testParallelRestoreExecutor() throws IOException {
+        Path dataDir = tempDir.resolve("data");
+        for (int i = 0; i < 200; i++) {
+            writeFile(tempDir, "data/d" + (i % 7) + "/e" + (i % 3) + "/f" + i + ".txt", "content " + i);
+        }
+        SnapshotManager manager = new SnapshotManager(tempDir.resolve("storage").toString());
+        Snapshot snapshot = manager.takeSnapshot(dataDir.toString());
+
+        Path target = tempDir.resolve("target");
+        Files.createDirectories(target.resolve("d1"));
+        Files.writeString(target.resolve("d1/stale.txt"), "not in the snapshot");
+        Files.writeString(target.resolve("extra.txt"), "neither");
+        Files.writeString(target.resolve("d2"), "a file where the snapshot has a folder");
+
+        new Restore(manager.getObjectStore(), 4).restoreSnapshot(target.toString(), snapshot);
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals("content " + i, Files.readString(target.resolve("d" + (i % 7) + "/e" + (i % 3) + "/f" + i + ".txt")));
+        }
+        assertFalse(Files.exists(target.resolve("d1/stale.txt")));
+        assertFalse(Files.exists(target.resolve("extra.txt")));
+
+        // A second run finds nothing to do
+        try (RestoreExecutor executor = new RestoreExecutor(manager.getObjectStore(), target, 4)) {
+            Cursor<FileMetadata> cursor = snapshot.getFileTree().cursor();
+            while (cursor.hasNext()) {
+                FileMetadata file = cursor.next();
+                executor.restore(file, Files.readAttributes(target.resolve(file.getFilePath()), BasicFileAttributes.class));
+            }
+            executor.awaitIdle();
+            assertEquals(200, executor.getProgress().getSkippedCount());
+            assertEquals(0, executor.getProgress().getDoneCount());
+            assertEquals(0, executor.getProgress().getFailedCount());
+        }
+        manager.close();
+    }
 }
@@ -1,4 +1,196 @@
 package com.filetracker;
 
+import com.filetracker.core.FileHasher;
+import com.filetracker.core.FileUtils;
+import com.filetracker.core.HashCache;
+import com.filetracker.core.SnapshotCatalog;
+import com.filetracker.core.SnapshotManager;
+import com.filetracker.models.FileMetadata;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static com.filetracker.Fixtures.writeFile;
+import static org.junit.jupiter.api.Assertions.*;
+
 public class SnapshotManagerTest {
+
+    /** Slightly longer than the racy window of SnapshotManager. */
+    private static final long RACY_WAIT_MILLIS = 2100;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testParallelScanMatchesSequentialScan() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            writeFile(tempDir, "dir" + (i % 5) + "/file" + i + ".txt", "content " + i);
+        }
+
+        List<FileMetadata> sequential = FileUtils.scanDirectory(tempDir.toString(), tempDir, 1);
+        List<FileMetadata> parallel = FileUtils.scanDirectory(tempDir.toString(), tempDir, 4);
+
+        assertEquals(50, sequential.size());
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            // Same walk order and same hashes
+            assertEquals(sequential.get(i).getFilePath(), parallel.get(i).getFilePath());
+            assertEquals(sequential.get(i).getFileHash(), parallel.get(i).getFileHash());
+        }
+    }
+
+    @Test
+    public void testMappedHashMatchesStreamedHash() throws IOException {
+        writeFile(tempDir, "abc.txt", "abc");
+        Path file = tempDir.resolve("abc.txt");
+        String expected = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+        long originalThreshold = FileHasher.getMmapThreshold();
+        try {
+            FileHasher.setMmapThreshold(Long.MAX_VALUE);
+            assertEquals(expected, FileHasher.hash(file, 3));
+
+            FileHasher.setMmapThreshold(1);
+            assertEquals(expected, FileHasher.hash(file, 3));
+        } finally {
+            FileHasher.setMmapThreshold(originalThreshold);
+        }
+    }
+
+    @Test
+    public void testIncrementalSnapshotReusesHashOfUnchangedFile() throws IOException {
+        writeFile(tempDir, "a.txt", "version1");
+        Path file = tempDir.resolve("a.txt");
+        FileTime oldTime = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(file, oldTime);
+
+        SnapshotManager manager = new SnapshotManager();
+        Snapshot first = manager.takeSnapshot(tempDir.toString());
+        String firstHash = first.getFileTree().search("a.txt").getFileHash();
+
+        // Same size and same mtime -> the stored hash is trusted, the file is not read
+        Files.writeString(file, "version2");
+        Files.setLastModifiedTime(file, oldTime);
+        Snapshot second = manager.takeSnapshot(tempDir.toString());
+        assertEquals(firstHash, second.getFileTree().search("a.txt").getFileHash());
+
+        // Paranoid mode always rehashes
+        manager.setParanoid(true);
+        Snapshot third = manager.takeSnapshot(tempDir.toString());
+        assertNotEquals(firstHash, third.getFileTree().search("a.txt").getFileHash());
+    }
+
+    @Test
+    public void testHashCacheSurvivesRestartAndEvictsDeletedFiles() throws IOException, InterruptedException {
+        for (int i = 0; i < 3000; i++) { // Enough entries to force the table to grow
+            writeFile(tempDir, "data/f" + i + ".txt", "payload " + i);
+        }
+        Thread.sleep(RACY_WAIT_MILLIS); // Otherwise the files are too fresh to be cached
+        Path storage = tempDir.resolve("storage");
+        Path dataDir = tempDir.resolve("data");
+
+        SnapshotManager first = new SnapshotManager(storage.toString());
+        Snapshot snapshot = first.takeSnapshot(dataDir.toString());
+        first.close();
+
+        Path file = dataDir.resolve("f7.txt");
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        try (HashCache cache = HashCache.open(storage.resolve(SnapshotManager.HASH_CACHE_FILE))) {
+            assertEquals(3000, cache.size());
+            assertArrayEquals(snapshot.getFileTree().search("f7.txt").getHashBytes(), cache.lookup(file, "f7.txt", attrs));
+        }
+
+        // A fresh manager (cold start) takes its hashes from the cache; deleted files are evicted
+        Files.delete(dataDir.resolve("f8.txt"));
+        SnapshotManager second = new SnapshotManager(storage.toString());
+        second.takeSnapshot(dataDir.toString());
+        second.close();
+        try (HashCache cache = HashCache.open(storage.resolve(SnapshotManager.HASH_CACHE_FILE))) {
+            assertEquals(2999, cache.size());
+        }
+    }
+
+    @Test
+    public void testHashCacheDoesNotRecordRacilyCleanFiles() throws IOException, InterruptedException {
+        writeFile(tempDir, "data/old.txt", "aaaa");
+        Thread.sleep(RACY_WAIT_MILLIS);
+        writeFile(tempDir, "data/new.txt", "bbbb");
+        Path storage = tempDir.resolve("storage");
+        Path dataDir = tempDir.resolve("data");
+        Path file = dataDir.resolve("new.txt");
+        FileTime mtime = Files.getLastModifiedTime(file);
+
+        SnapshotManager first = new SnapshotManager(storage.toString());
+        first.takeSnapshot(dataDir.toString());
+        first.close();
+        try (HashCache cache = HashCache.open(storage.resolve(SnapshotManager.HASH_CACHE_FILE))) {
+            assertEquals(1, cache.size());
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            assertNull(cache.lookup(file, "new.txt", attrs));
+        }
+
+        // Same-size rewrite that keeps the mtime: a cold start must hash the new content
+        Files.writeString(file, "cccc");
+        Files.setLastModifiedTime(file, mtime);
+        SnapshotManager second = new SnapshotManager(storage.toString());
+        Snapshot snapshot = second.takeSnapshot(dataDir.toString());
+        second.close();
+        assertEquals(FileHasher.hash(file, 4), snapshot.getFileTree().search("new.txt").getFileHash());
+    }
+
+    @Test
+    public void testHistorySurvivesRestart() throws IOException {
+        writeFile(tempDir, "data/a.txt", "one");
+        writeFile(tempDir, "data/sub/b.txt", "two");
+        Path storage = tempDir.resolve("storage");
+        Path dataDir = tempDir.resolve("data");
+
+        SnapshotManager first = new SnapshotManager(storage.toString());
+        Snapshot original = first.takeSnapshot(dataDir.toString());
+        writeFile(tempDir, "data/c.txt", "three");
+        first.takeSnapshot(dataDir.toString());
+        first.close();
+
+        SnapshotManager second = new SnapshotManager(storage.toString());
+        assertEquals(2, second.getSnapshotCount());
+        Snapshot reloaded = second.getSnapshotById(1);
+        assertEquals(original.getTimestamp(), reloaded.getTimestamp());
+        assertEquals(original.getRootPath(), reloaded.getRootPath());
+        assertEquals(2, reloaded.getFileCount());
+        assertEquals(6L, reloaded.getTotalBytes());
+        assertEquals(original.getFileTree().search("a.txt").getFileHash(),
+                reloaded.getFileTree().search("a.txt").getFileHash());
+        assertEquals(3, second.getLatestSnapshot().getFileCount());
+
+        // IDs continue where the previous run stopped
+        assertEquals(3, second.takeSnapshot(dataDir.toString()).getSnapshotId());
+        second.close();
+    }
+
+    @Test
+    public void testCatalogKeepsOnlyRecentSnapshotsResident() throws IOException {
+        writeFile(tempDir, "data/a.txt", "one");
+        Path storage = tempDir.resolve("storage");
+        SnapshotManager manager = new SnapshotManager();
+        SnapshotCatalog catalog = SnapshotCatalog.open(storage, 2);
+        for (int i = 0; i < 5; i++) {
+            catalog.add(manager.takeSnapshot(tempDir.resolve("data").toString()));
+        }
+        assertEquals(2, catalog.getResidentCount());
+
+        SnapshotCatalog reopened = SnapshotCatalog.open(storage, 2);
+        assertEquals(5, reopened.getSnapshots().size());
+        assertEquals(0, reopened.getResidentCount()); // Only the manifest was read
+        for (Snapshot snapshot : reopened.getSnapshots()) {
+            assertNotNull(snapshot.getFileTree().search("a.txt"));
+        }
+        assertEquals(2, reopened.getResidentCount());
+    }
 }
@@ -0,0 +1,42 @@
+package com.filetracker;
+
+import com.filetracker.core.SnapshotManager;
+import com.filetracker.core.SortedFileWalker;
+import com.filetracker.models.Snapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.filetracker.Fixtures.writeFile;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortedFileWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSortedWalkMatchesSnapshotKeyOrder() throws IOException {
+        // '.' and '-' sort before the separator, so a plain directory walk would get these wrong
+        for (String path : new String[]{"data/a/b.txt", "data/a.txt", "data/a-b/c.txt", "data/ab.txt", "data/a/z/y.txt", "data/a0"}) {
+            writeFile(tempDir, path, path);
+        }
+        Path dataDir = tempDir.resolve("data");
+        Snapshot snapshot = new SnapshotManager().takeSnapshot(dataDir.toString());
+
+        List<String> walked = new ArrayList<>();
+        for (SortedFileWalker walker = new SortedFileWalker(dataDir, dataDir); walker.hasNext(); ) {
+            walked.add(walker.next().getKey());
+        }
+        List<String> snapshotKeys = new ArrayList<>();
+        snapshot.getFileTree().inOrderTraversal((key, file) -> snapshotKeys.add(key));
+        assertEquals(snapshotKeys, walked);
+        assertEquals(6, walked.size());
+
+        assertFalse(new SortedFileWalker(dataDir.resolve("missing"), dataDir).hasNext());
+    }
+}